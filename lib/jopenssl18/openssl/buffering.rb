@@ -23,7 +23,9 @@ module Buffering
   def initialize(*args)
     @eof = false
     @rbuffer = ""
-    @sync = @io.sync
+    self.sync = @io.sync
+    # buffered natively (by the SSLSocket) with the Ruby implementation as a fallback
+    @native_buffering = respond_to?(:buffered_read, true)
   end
 
   #
@@ -61,8 +63,9 @@ module Buffering
       else
         buf = ""
       end
-      return @eof ? nil : buf
+      return ( @native_buffering ? buffered_eof?(false) : @eof ) ? nil : buf
     end
+    return buffered_read(size, buf) if @native_buffering
     until @eof
       break if size && size <= @rbuffer.size
       fill_rbuff
@@ -82,8 +85,9 @@ module Buffering
       else
         buf = ""
       end
-      return @eof ? nil : buf
+      return ( @native_buffering ? buffered_eof?(false) : @eof ) ? nil : buf
     end
+    return buffered_readpartial(maxlen, buf) if @native_buffering
     if @rbuffer.empty?
       begin
         return sysread(maxlen, buf)
@@ -101,6 +105,7 @@ module Buffering
   end
 
   def gets(eol=$/)
+    return buffered_gets(eol, nil) if @native_buffering
     idx = @rbuffer.index(eol)
     until @eof
       break if idx
@@ -152,10 +157,12 @@ module Buffering
   end
 
   def ungetc(c)
+    return buffered_unread(c.chr) if @native_buffering
     @rbuffer[0,0] = c.chr
   end
 
   def eof?
+    return buffered_eof? if @native_buffering
     fill_rbuff if !@eof && @rbuffer.empty?
     @eof && @rbuffer.empty?
   end
@@ -167,6 +174,7 @@ module Buffering
   private
 
   def do_write(s)
+    return buffered_write(s) if @native_buffering
     @wbuffer = "" unless defined? @wbuffer
     @wbuffer << s
     @sync ||= false
@@ -227,6 +235,10 @@ module Buffering
   end
 
   def flush
+    if @native_buffering
+      buffered_flush
+      return sync
+    end
     osync = @sync
     @sync = true
     do_write ""
@@ -18,6 +18,9 @@
 # OpenSSL IO buffering mix-in module.
 #
 # This module allows an OpenSSL::SSL::SSLSocket to behave like an IO.
+#
+# The buffers are maintained natively (by the SSLSocket) when it provides the
+# (private) buffered_* methods, otherwise the Ruby implementation here is used.
 
 module OpenSSL::Buffering
   include Enumerable
@@ -37,7 +40,9 @@ module OpenSSL::Buffering
   def initialize(*args)
     @eof = false
     @rbuffer = ""
-    @sync = @io.sync
+    self.sync = @io.sync
+    # buffered natively (by the SSLSocket) with the Ruby implementation as a fallback
+    @native_buffering = respond_to?(:buffered_read, true)
   end
 
   #
@@ -89,6 +94,7 @@ module OpenSSL::Buffering
         return ""
       end
     end
+    return buffered_read(size, buf) if @native_buffering
     until @eof
       break if size && size <= @rbuffer.size
       fill_rbuff
@@ -116,6 +122,7 @@ module OpenSSL::Buffering
         return ""
       end
     end
+    return buffered_readpartial(maxlen, buf) if @native_buffering
     if @rbuffer.empty?
       begin
         return sysread(maxlen, buf)
@@ -170,6 +177,7 @@ module OpenSSL::Buffering
         return ""
       end
     end
+    return buffered_read_nonblock(maxlen, buf) if @native_buffering
     if @rbuffer.empty?
       return sysread_nonblock(maxlen, buf)
     end
@@ -194,6 +202,7 @@ module OpenSSL::Buffering
   # Unlike IO#gets the separator must be provided if a limit is provided.
 
   def gets(eol=$/, limit=nil)
+    return buffered_gets(eol, limit) if @native_buffering
     idx = @rbuffer.index(eol)
     until @eof
       break if idx
@@ -282,6 +291,7 @@ module OpenSSL::Buffering
   # Has no effect on unbuffered reads (such as #sysread).
 
   def ungetc(c)
+    return buffered_unread(c.chr) if @native_buffering
     @rbuffer[0,0] = c.chr
   end
 
@@ -290,6 +300,7 @@ module OpenSSL::Buffering
   # be read.
 
   def eof?
+    return buffered_eof? if @native_buffering
     fill_rbuff if !@eof && @rbuffer.empty?
     @eof && @rbuffer.empty?
   end
@@ -305,6 +316,7 @@ module OpenSSL::Buffering
   # buffer is flushed to the underlying socket.
 
   def do_write(s)
+    return buffered_write(s) if @native_buffering
     @wbuffer = "" unless defined? @wbuffer
     @wbuffer << s
     @wbuffer.force_encoding(Encoding::BINARY)
@@ -431,12 +443,16 @@ module OpenSSL::Buffering
   # Flushes buffered data to the SSLSocket.
 
   def flush
+    if @native_buffering
+      buffered_flush
+      return self
+    end
     osync = @sync
     @sync = true
     do_write ""
     return self
   ensure
-    @sync = osync
+    @sync = osync unless @native_buffering
   end
 
   ##
@@ -0,0 +1,106 @@
+/***** BEGIN LICENSE BLOCK *****
+ * Version: EPL 1.0/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Eclipse Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either of the GNU General Public License Version 2 or later (the "GPL"),
+ * or the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the EPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the EPL, the GPL or the LGPL.
+ ***** END LICENSE BLOCK *****/
+package org.jruby.ext.openssl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A (JVM wide) pool of network buffers, lent to SSL sockets while they
+ * actually read/write so that idle connections do not hold on to them.
+ *
+ * Buffers are pooled per capacity, at most <code>maxPooled</code> of each.
+ * Set <code>jruby.openssl.ssl.buffers.direct=true</code> to use direct buffers
+ * and <code>jruby.openssl.ssl.buffers.pool_size</code> to change the limit.
+ */
+final class ByteBufferPool {
+
+    static final ByteBufferPool INSTANCE = new ByteBufferPool(
+        Boolean.getBoolean("jruby.openssl.ssl.buffers.direct"),
+        Integer.getInteger("jruby.openssl.ssl.buffers.pool_size", 256)
+    );
+
+    // (always) heap buffers - for data accessed as an array e.g. the read buffer
+    static final ByteBufferPool HEAP = new ByteBufferPool(
+        false, Integer.getInteger("jruby.openssl.ssl.buffers.pool_size", 256)
+    );
+
+    private final boolean direct;
+    private final int maxPooled;
+
+    private final ConcurrentHashMap<Integer, Pool> pools = new ConcurrentHashMap<Integer, Pool>(8);
+
+    ByteBufferPool(final boolean direct, final int maxPooled) {
+        this.direct = direct;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @param capacity
+     * @return a cleared buffer of the given capacity
+     */
+    ByteBuffer acquire(final int capacity) {
+        final Pool pool = pools.get(capacity);
+        if ( pool != null ) {
+            final ByteBuffer buffer = pool.buffers.poll();
+            if ( buffer != null ) {
+                pool.size.decrementAndGet();
+                buffer.clear();
+                return buffer;
+            }
+        }
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Returns a buffer (previously acquired) back to the pool.
+     * @param buffer
+     */
+    void release(final ByteBuffer buffer) {
+        if ( buffer.isDirect() != direct ) return;
+
+        final Integer capacity = buffer.capacity();
+        Pool pool = pools.get(capacity);
+        if ( pool == null ) {
+            final Pool newPool = new Pool();
+            pool = pools.putIfAbsent(capacity, newPool);
+            if ( pool == null ) pool = newPool;
+        }
+        // NOTE: might slightly exceed maxPooled under contention (not an issue)
+        if ( pool.size.get() < maxPooled ) {
+            pool.size.incrementAndGet();
+            pool.buffers.offer(buffer);
+        }
+    }
+
+    private static final class Pool {
+        final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        final AtomicInteger size = new AtomicInteger(0);
+    }
+
+}
@@ -28,13 +28,15 @@
 package org.jruby.ext.openssl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -171,6 +173,16 @@ public class CipherStrings {
     public final static String SSL_TXT_SSLV2 = "SSLv2";
     public final static String SSL_TXT_SSLV3 = "SSLv3";
     public final static String SSL_TXT_TLSV1 = "TLSv1";
+    public final static String SSL_TXT_TLSV1_2 = "TLSv1.2";
+    public final static String SSL_TXT_AESGCM = "AESGCM";
+    public final static String SSL_TXT_CHACHA20 = "CHACHA20";
+    public final static String SSL_TXT_SHA256 = "SHA256";
+    public final static String SSL_TXT_SHA384 = "SHA384";
+    public final static String SSL_TXT_kEECDH = "kEECDH";
+    public final static String SSL_TXT_EECDH = "EECDH";
+    public final static String SSL_TXT_ECDHE = "ECDHE";
+    public final static String SSL_TXT_aECDSA = "aECDSA";
+    public final static String SSL_TXT_ECDSA = "ECDSA";
     public final static String SSL_TXT_ALL = "ALL";
     public final static String SSL_TXT_ECC = "ECCdraft";
 
@@ -208,21 +220,28 @@ public class CipherStrings {
     public final static long SSL_ECDH = (SSL_kECDH|SSL_kECDHE);
     public final static long SSL_FZA = (SSL_aFZA|SSL_kFZA|SSL_eFZA);
     public final static long SSL_KRB5 = (SSL_kKRB5|SSL_aKRB5);
-    public final static long SSL_ENC_MASK = 0x043F8000L;
+    public final static long SSL_ENC_MASK = 0x043F8000L | 0x300000000L;
     public final static long SSL_DES = 0x00008000L;
     public final static long SSL_3DES = 0x00010000L;
     public final static long SSL_RC4 = 0x00020000L;
     public final static long SSL_RC2 = 0x00040000L;
     public final static long SSL_IDEA = 0x00080000L;
     public final static long SSL_AES = 0x04000000L;
-    public final static long SSL_MAC_MASK = 0x00c00000L;
+    public final static long SSL_AESGCM = 0x100000000L;
+    public final static long SSL_CHACHA20POLY1305 = 0x200000000L;
+    public final static long SSL_MAC_MASK = 0x00c00000L | 0x1C00000000L;
     public final static long SSL_MD5 = 0x00400000L;
     public final static long SSL_SHA1 = 0x00800000L;
     public final static long SSL_SHA = (SSL_SHA1);
-    public final static long SSL_SSL_MASK = 0x03000000L;
+    public final static long SSL_SHA256 = 0x400000000L;
+    public final static long SSL_SHA384 = 0x800000000L;
+    public final static long SSL_AEAD = 0x1000000000L;
+    public final static long SSL_SSL_MASK = 0x03000000L | 0x6000000000L;
     public final static long SSL_SSLV2 = 0x01000000L;
     public final static long SSL_SSLV3 = 0x02000000L;
     public final static long SSL_TLSV1 = SSL_SSLV3;
+    public final static long SSL_TLSV1_2 = 0x2000000000L;
+    public final static long SSL_TLSV1_3 = 0x4000000000L;
     public final static long SSL_EXP_MASK = 0x00000003L;
     public final static long SSL_NOT_EXP = 0x00000001L;
     public final static long SSL_EXPORT = 0x00000002L;
@@ -336,6 +355,30 @@ public class CipherStrings {
     public final static long TLS1_CK_ECDH_anon_WITH_AES_128_CBC_SHA = 0x0300C018;
     public final static long TLS1_CK_ECDH_anon_WITH_AES_256_CBC_SHA = 0x0300C019;
 
+    // TLS 1.2 (and TLS 1.3) :
+    public final static long TLS1_CK_RSA_WITH_AES_128_SHA256 = 0x0300003C;
+    public final static long TLS1_CK_RSA_WITH_AES_256_SHA256 = 0x0300003D;
+    public final static long TLS1_CK_DHE_RSA_WITH_AES_128_SHA256 = 0x03000067;
+    public final static long TLS1_CK_DHE_RSA_WITH_AES_256_SHA256 = 0x0300006B;
+    public final static long TLS1_CK_RSA_WITH_AES_128_GCM_SHA256 = 0x0300009C;
+    public final static long TLS1_CK_RSA_WITH_AES_256_GCM_SHA384 = 0x0300009D;
+    public final static long TLS1_CK_DHE_RSA_WITH_AES_128_GCM_SHA256 = 0x0300009E;
+    public final static long TLS1_CK_DHE_RSA_WITH_AES_256_GCM_SHA384 = 0x0300009F;
+    public final static long TLS1_CK_ECDHE_ECDSA_WITH_AES_128_SHA256 = 0x0300C023;
+    public final static long TLS1_CK_ECDHE_ECDSA_WITH_AES_256_SHA384 = 0x0300C024;
+    public final static long TLS1_CK_ECDHE_RSA_WITH_AES_128_SHA256 = 0x0300C027;
+    public final static long TLS1_CK_ECDHE_RSA_WITH_AES_256_SHA384 = 0x0300C028;
+    public final static long TLS1_CK_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256 = 0x0300C02B;
+    public final static long TLS1_CK_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384 = 0x0300C02C;
+    public final static long TLS1_CK_ECDHE_RSA_WITH_AES_128_GCM_SHA256 = 0x0300C02F;
+    public final static long TLS1_CK_ECDHE_RSA_WITH_AES_256_GCM_SHA384 = 0x0300C030;
+    public final static long TLS1_CK_ECDHE_RSA_WITH_CHACHA20_POLY1305 = 0x0300CCA8;
+    public final static long TLS1_CK_ECDHE_ECDSA_WITH_CHACHA20_POLY1305 = 0x0300CCA9;
+    public final static long TLS1_CK_DHE_RSA_WITH_CHACHA20_POLY1305 = 0x0300CCAA;
+    public final static long TLS1_3_CK_AES_128_GCM_SHA256 = 0x03001301;
+    public final static long TLS1_3_CK_AES_256_GCM_SHA384 = 0x03001302;
+    public final static long TLS1_3_CK_CHACHA20_POLY1305_SHA256 = 0x03001303;
+
     public final static String TLS1_TXT_RSA_EXPORT1024_WITH_RC4_56_MD5 = "EXP1024-RC4-MD5";
     public final static String TLS1_TXT_RSA_EXPORT1024_WITH_RC2_CBC_56_MD5 = "EXP1024-RC2-CBC-MD5";
     public final static String TLS1_TXT_RSA_EXPORT1024_WITH_DES_CBC_SHA = "EXP1024-DES-CBC-SHA";
@@ -381,6 +424,29 @@ public class CipherStrings {
     public final static String TLS1_TXT_ECDH_anon_WITH_AES_128_CBC_SHA = "AECDH-AES128-SHA";
     public final static String TLS1_TXT_ECDH_anon_WITH_AES_256_CBC_SHA = "AECDH-AES256-SHA";
 
+    public final static String TLS1_TXT_RSA_WITH_AES_128_SHA256 = "AES128-SHA256";
+    public final static String TLS1_TXT_RSA_WITH_AES_256_SHA256 = "AES256-SHA256";
+    public final static String TLS1_TXT_DHE_RSA_WITH_AES_128_SHA256 = "DHE-RSA-AES128-SHA256";
+    public final static String TLS1_TXT_DHE_RSA_WITH_AES_256_SHA256 = "DHE-RSA-AES256-SHA256";
+    public final static String TLS1_TXT_RSA_WITH_AES_128_GCM_SHA256 = "AES128-GCM-SHA256";
+    public final static String TLS1_TXT_RSA_WITH_AES_256_GCM_SHA384 = "AES256-GCM-SHA384";
+    public final static String TLS1_TXT_DHE_RSA_WITH_AES_128_GCM_SHA256 = "DHE-RSA-AES128-GCM-SHA256";
+    public final static String TLS1_TXT_DHE_RSA_WITH_AES_256_GCM_SHA384 = "DHE-RSA-AES256-GCM-SHA384";
+    public final static String TLS1_TXT_ECDHE_ECDSA_WITH_AES_128_SHA256 = "ECDHE-ECDSA-AES128-SHA256";
+    public final static String TLS1_TXT_ECDHE_ECDSA_WITH_AES_256_SHA384 = "ECDHE-ECDSA-AES256-SHA384";
+    public final static String TLS1_TXT_ECDHE_RSA_WITH_AES_128_SHA256 = "ECDHE-RSA-AES128-SHA256";
+    public final static String TLS1_TXT_ECDHE_RSA_WITH_AES_256_SHA384 = "ECDHE-RSA-AES256-SHA384";
+    public final static String TLS1_TXT_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256 = "ECDHE-ECDSA-AES128-GCM-SHA256";
+    public final static String TLS1_TXT_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384 = "ECDHE-ECDSA-AES256-GCM-SHA384";
+    public final static String TLS1_TXT_ECDHE_RSA_WITH_AES_128_GCM_SHA256 = "ECDHE-RSA-AES128-GCM-SHA256";
+    public final static String TLS1_TXT_ECDHE_RSA_WITH_AES_256_GCM_SHA384 = "ECDHE-RSA-AES256-GCM-SHA384";
+    public final static String TLS1_TXT_ECDHE_RSA_WITH_CHACHA20_POLY1305 = "ECDHE-RSA-CHACHA20-POLY1305";
+    public final static String TLS1_TXT_ECDHE_ECDSA_WITH_CHACHA20_POLY1305 = "ECDHE-ECDSA-CHACHA20-POLY1305";
+    public final static String TLS1_TXT_DHE_RSA_WITH_CHACHA20_POLY1305 = "DHE-RSA-CHACHA20-POLY1305";
+    public final static String TLS1_3_TXT_AES_128_GCM_SHA256 = "TLS_AES_128_GCM_SHA256";
+    public final static String TLS1_3_TXT_AES_256_GCM_SHA384 = "TLS_AES_256_GCM_SHA384";
+    public final static String TLS1_3_TXT_CHACHA20_POLY1305_SHA256 = "TLS_CHACHA20_POLY1305_SHA256";
+
     public static class Def {
         public final int valid;
         public final String name;
@@ -392,8 +458,12 @@ public class CipherStrings {
         public final int alg_bits;
         public final long mask;
         public final long mask_strength;
-        public String cipherSuite;
+        public final String cipherSuite;
         public Def(int valid, String name, long id, long algorithms, long algo_strength, long algorithm2, int strength_bits, int alg_bits, long mask, long mask_strength) {
+            this(valid, name, id, algorithms, algo_strength, algorithm2, strength_bits, alg_bits, mask, mask_strength, null);
+        }
+
+        private Def(int valid, String name, long id, long algorithms, long algo_strength, long algorithm2, int strength_bits, int alg_bits, long mask, long mask_strength, String cipherSuite) {
             this.valid = valid;
             this.name = name;
             this.id = id;
@@ -404,6 +474,14 @@ public class CipherStrings {
             this.alg_bits = alg_bits;
             this.mask = mask;
             this.mask_strength = mask_strength;
+            this.cipherSuite = cipherSuite;
+        }
+
+        /**
+         * @return a copy of this (shared) definition for the given (JSSE) cipher suite
+         */
+        Def withCipherSuite(final String cipherSuite) {
+            return new Def(valid, name, id, algorithms, algo_strength, algorithm2, strength_bits, alg_bits, mask, mask_strength, cipherSuite);
         }
 
         @Override
@@ -454,101 +532,200 @@ public class CipherStrings {
     public final static Map<String, Def> CipherNames = new HashMap<String, Def>();
     public final static Map<String, String> SuiteToOSSL = new HashMap<String, String>();
 
-    public static List<Def> getMatchingCiphers(String str, String[] all) {
-        String[] parts = str.split("[:, ]+");
-        List<Def> currentList = new ArrayList<Def>();
-        Set<Def> removed = new HashSet<Def>();
-
-        for (String part : parts) {
-            if (part.equals("@STRENGTH")) {
-                Collections.sort(currentList, new Comparator<Def>() {
+    private static final int MATCHES_CACHE_SIZE = 64;
+
+    // (supported) cipher suites -> suite definitions
+    private static final Map<List<String>, Suites> suitesCache = new ConcurrentHashMap<List<String>, Suites>(8);
+    // (cipher string, supported suites) -> matched definitions
+    private static final Map<Suites.Key, List<Def>> matchesCache = new ConcurrentHashMap<Suites.Key, List<Def>>(16);
+
+    /**
+     * Resolves the cipher string (rules) against the given (JSSE) cipher suites.
+     * @param str the (OpenSSL) cipher string
+     * @param all supported cipher suites
+     * @return (an unmodifiable list of) matching cipher definitions with
+     * {@link Def#cipherSuite} set
+     */
+    public static List<Def> getMatchingCiphers(final String str, final String[] all) {
+        final List<String> allList = Arrays.asList(all);
+        Suites suites = suitesCache.get(allList);
+        if ( suites == null ) {
+            if ( suitesCache.size() >= MATCHES_CACHE_SIZE ) suitesCache.clear();
+            suites = new Suites(all);
+            suitesCache.put(Arrays.asList(all.clone()), suites);
+        }
+        final Suites.Key key = new Suites.Key(str, suites);
+        List<Def> matching = matchesCache.get(key);
+        if ( matching == null ) {
+            if ( matchesCache.size() >= MATCHES_CACHE_SIZE ) matchesCache.clear();
+            matching = Collections.unmodifiableList( suites.match(str) );
+            matchesCache.put(key, matching);
+        }
+        return matching;
+    }
 
-                    public int compare(Def first, Def second) {
-                        return second.strength_bits - first.strength_bits;
-                    }
-                });
-                continue;
-            }
-            int index = 0;
-            switch (part.charAt(0)) {
-                case '!':
-                    index++;
-                    break;
-                case '+':
-                    index++;
-                    break;
-                case '-':
-                    index++;
-                    break;
+    /**
+     * (Known) definitions for a set of cipher suites, cipher string rules are
+     * evaluated as bit-sets (of definition indexes) over these.
+     */
+    static final class Suites {
+
+        final Def[] defs;
+        private final Map<String, BitSet> patterns = new ConcurrentHashMap<String, BitSet>();
+
+        Suites(final String[] all) {
+            final LinkedHashMap<String, Def> defs = new LinkedHashMap<String, Def>(all.length);
+            for ( final String entry : all ) {
+                final String ossl = SuiteToOSSL.get(entry);
+                if ( ossl == null ) continue;
+                final Def def = CipherNames.get(ossl);
+                if ( def == null ) continue;
+                // NOTE: (JSSE) suites mapping to the same name - last one wins
+                defs.remove(ossl);
+                defs.put(ossl, def.withCipherSuite(entry));
             }
-            List<Def> matching = getMatching(part.substring(index), all);
-            if (matching != null) {
-                if (index > 0) {
-                    switch (part.charAt(0)) {
+            this.defs = defs.values().toArray( new Def[ defs.size() ] );
+        }
+
+        List<Def> match(final String str) {
+            final int size = defs.length;
+            final BitSet current = new BitSet(size);
+            final BitSet removed = new BitSet(size);
+            // position of (currently) selected ciphers in the resulting list
+            final int[] rank = new int[size]; int seq = 0;
+
+            for ( final String part : str.split("[:, ]+") ) {
+                if ( part.length() == 0 ) continue;
+                if ( part.equals("@STRENGTH") ) {
+                    final Integer[] sorted = sortedIndexes(current, rank);
+                    // stable - keeps the current order for the same strength
+                    Arrays.sort(sorted, new Comparator<Integer>() {
+                        public int compare(Integer first, Integer second) {
+                            return defs[second].strength_bits - defs[first].strength_bits;
+                        }
+                    });
+                    for ( Integer i : sorted ) rank[i] = seq++;
+                    continue;
+                }
+                final char op = part.charAt(0);
+                final boolean prefixed = op == '!' || op == '+' || op == '-';
+                final BitSet matching = getMatching(prefixed ? part.substring(1) : part);
+                if ( matching == null ) continue;
+
+                if ( prefixed ) {
+                    switch ( op ) {
                         case '!':
-                            currentList.removeAll(matching);
-                            removed.addAll(matching);
+                            current.andNot(matching);
+                            removed.or(matching);
                             break;
-                        case '+':   // '+' is for moving entry in the list.
-                            for (Def ele : matching) {
-                                if (!removed.contains(ele) && currentList.contains(ele)) {
-                                    currentList.remove(ele);
-                                    currentList.add(ele);
-                                }
+                        case '+': // '+' is for moving entry in the list.
+                            matching.and(current);
+                            matching.andNot(removed);
+                            for ( int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1) ) {
+                                rank[i] = seq++;
                             }
                             break;
                         case '-':
-                            currentList.removeAll(matching);
+                            current.andNot(matching);
                             break;
                     }
                 } else {
-                    for (Def ele : matching) {
-                        if (!removed.contains(ele) && !currentList.contains(ele)) {
-                            currentList.add(ele);
-                        }
+                    matching.andNot(removed);
+                    matching.andNot(current);
+                    for ( int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1) ) {
+                        rank[i] = seq++;
                     }
+                    current.or(matching);
+                }
+            }
+
+            // as with OpenSSL 1.1.1 TLS 1.3 suites are not configured by the
+            // cipher string - they're always enabled (and preferred)
+            final ArrayList<Def> result = new ArrayList<Def>(current.cardinality() + 3);
+            for ( int i = 0; i < size; i++ ) {
+                if ( isTLSv13(defs[i]) ) {
+                    result.add( defs[i] ); current.clear(i);
                 }
             }
+            final Integer[] sorted = sortedIndexes(current, rank);
+            for ( Integer i : sorted ) result.add( defs[i] );
+            return result;
         }
-        return currentList;
-    }
 
-    private static List<Def> getMatching(String definition, String[] all) {
-        List<Def> matching = null;
-        for (String name : definition.split("[+]")) {
-            Def pattern = Definitions.get(name);
-            if (pattern != null) {
-                if (matching == null) {
-                    matching = getMatchingPattern(pattern, all);
-                } else {
-                    List<Def> updated = new ArrayList<Def>();
-                    for (Def ele : getMatchingPattern(pattern, all)) {
-                        if (matching.contains(ele)) {
-                            updated.add(ele);
-                        }
+        private static boolean isTLSv13(final Def def) {
+            return ( def.algorithms & SSL_TLSV1_3 ) != 0;
+        }
+
+        private static Integer[] sortedIndexes(final BitSet current, final int[] rank) {
+            final Integer[] indexes = new Integer[ current.cardinality() ]; int j = 0;
+            for ( int i = current.nextSetBit(0); i >= 0; i = current.nextSetBit(i + 1) ) {
+                indexes[j++] = i;
+            }
+            Arrays.sort(indexes, new Comparator<Integer>() {
+                public int compare(Integer first, Integer second) {
+                    return rank[first] - rank[second];
+                }
+            });
+            return indexes;
+        }
+
+        // e.g. "ALL", "aRSA+AES" or "DES-CBC3-SHA", null if not known
+        private BitSet getMatching(final String definition) {
+            BitSet matching = null;
+            for ( final String name : definition.split("[+]") ) {
+                final BitSet pattern = getMatchingPattern(name);
+                if ( pattern != null ) {
+                    if ( matching == null ) {
+                        matching = (BitSet) pattern.clone();
+                    } else {
+                        matching.and(pattern);
                     }
-                    matching = updated;
                 }
             }
+            return matching;
         }
-        return matching;
-    }
-    
-    private static List<Def> getMatchingPattern(Def pattern, String[] all) {
-        List<Def> matching = new ArrayList<Def>();
-        for (String entry : all) {
-            String ossl = SuiteToOSSL.get(entry);
-            if (ossl != null) {
-                Def def = CipherNames.get(ossl);
-                if (def != null) {
-                    def.cipherSuite = entry;
-                    if (pattern.matches(def)) {
-                        matching.add(def);
-                    }
+
+        private BitSet getMatchingPattern(final String name) {
+            BitSet matching = patterns.get(name);
+            if ( matching != null ) return matching;
+
+            final Def pattern = Definitions.get(name);
+            if ( pattern == null ) {
+                if ( ! CipherNames.containsKey(name) ) return null;
+            }
+            matching = new BitSet(defs.length);
+            for ( int i = 0; i < defs.length; i++ ) {
+                if ( pattern == null ? name.equals(defs[i].name) : pattern.matches(defs[i]) ) {
+                    matching.set(i);
                 }
             }
+            patterns.put(name, matching);
+            return matching;
         }
-        return matching;
+
+        static final class Key {
+
+            final String str;
+            final Suites suites;
+
+            Key(final String str, final Suites suites) {
+                this.str = str; this.suites = suites;
+            }
+
+            @Override
+            public boolean equals(final Object obj) {
+                if ( ! ( obj instanceof Key ) ) return false;
+                final Key that = (Key) obj;
+                return this.suites == that.suites && this.str.equals(that.str);
+            }
+
+            @Override
+            public int hashCode() {
+                return 31 * str.hashCode() + System.identityHashCode(suites);
+            }
+
+        }
+
     }
 
     private static void addAlias(String cipherSuite, String ossl) {
@@ -556,7 +733,7 @@ public class CipherStrings {
     }
 
     static {
-        Definitions.put(SSL_TXT_ALL,new Def(0,SSL_TXT_ALL, 0,SSL_ALL & ~SSL_eNULL & ~SSL_kECDH & ~SSL_kECDHE, SSL_ALL ,0,0,0,SSL_ALL,SSL_ALL));
+        Definitions.put(SSL_TXT_ALL,new Def(0,SSL_TXT_ALL, 0,SSL_ALL & ~SSL_eNULL, SSL_ALL ,0,0,0,SSL_ALL,SSL_ALL));
         Definitions.put(SSL_TXT_CMPALL,new Def(0,SSL_TXT_CMPALL,0,SSL_eNULL,0,0,0,0,SSL_ENC_MASK,0));
         Definitions.put(SSL_TXT_CMPDEF,new Def(0,SSL_TXT_CMPDEF,0,SSL_ADH, 0,0,0,0,SSL_AUTH_MASK,0));
         Definitions.put(SSL_TXT_kKRB5,new Def(0,SSL_TXT_kKRB5,0,SSL_kKRB5,0,0,0,0,SSL_MKEY_MASK,0));
@@ -582,7 +759,16 @@ public class CipherStrings {
         Definitions.put(SSL_TXT_IDEA,new Def(0,SSL_TXT_IDEA,0,SSL_IDEA,  0,0,0,0,SSL_ENC_MASK,0));
         Definitions.put(SSL_TXT_eNULL,new Def(0,SSL_TXT_eNULL,0,SSL_eNULL,0,0,0,0,SSL_ENC_MASK,0));
         Definitions.put(SSL_TXT_eFZA,new Def(0,SSL_TXT_eFZA,0,SSL_eFZA,  0,0,0,0,SSL_ENC_MASK,0));
-        Definitions.put(SSL_TXT_AES,new Def(0,SSL_TXT_AES,	0,SSL_AES,   0,0,0,0,SSL_ENC_MASK,0));
+        Definitions.put(SSL_TXT_AES,new Def(0,SSL_TXT_AES,	0,SSL_AES|SSL_AESGCM, 0,0,0,0,SSL_ENC_MASK,0));
+        Definitions.put(SSL_TXT_AESGCM,new Def(0,SSL_TXT_AESGCM,0,SSL_AESGCM, 0,0,0,0,SSL_ENC_MASK,0));
+        Definitions.put(SSL_TXT_CHACHA20,new Def(0,SSL_TXT_CHACHA20,0,SSL_CHACHA20POLY1305, 0,0,0,0,SSL_ENC_MASK,0));
+        Definitions.put(SSL_TXT_SHA256,new Def(0,SSL_TXT_SHA256,0,SSL_SHA256, 0,0,0,0,SSL_MAC_MASK,0));
+        Definitions.put(SSL_TXT_SHA384,new Def(0,SSL_TXT_SHA384,0,SSL_SHA384, 0,0,0,0,SSL_MAC_MASK,0));
+        Definitions.put(SSL_TXT_kEECDH,new Def(0,SSL_TXT_kEECDH,0,SSL_kECDHE, 0,0,0,0,SSL_MKEY_MASK,0));
+        Definitions.put(SSL_TXT_EECDH,new Def(0,SSL_TXT_EECDH,0,SSL_kECDHE|(SSL_AUTH_MASK^SSL_aNULL), 0,0,0,0,SSL_MKEY_MASK|SSL_AUTH_MASK,0));
+        Definitions.put(SSL_TXT_ECDHE,new Def(0,SSL_TXT_ECDHE,0,SSL_kECDHE, 0,0,0,0,SSL_MKEY_MASK,0));
+        Definitions.put(SSL_TXT_aECDSA,new Def(0,SSL_TXT_aECDSA,0,SSL_aECDSA, 0,0,0,0,SSL_AUTH_MASK,0));
+        Definitions.put(SSL_TXT_ECDSA,new Def(0,SSL_TXT_ECDSA,0,SSL_aECDSA, 0,0,0,0,SSL_AUTH_MASK,0));
         Definitions.put(SSL_TXT_MD5,new Def(0,SSL_TXT_MD5,	0,SSL_MD5,   0,0,0,0,SSL_MAC_MASK,0));
         Definitions.put(SSL_TXT_SHA1,new Def(0,SSL_TXT_SHA1,0,SSL_SHA1,  0,0,0,0,SSL_MAC_MASK,0));
         Definitions.put(SSL_TXT_SHA,new Def(0,SSL_TXT_SHA,	0,SSL_SHA,   0,0,0,0,SSL_MAC_MASK,0));
@@ -594,6 +780,7 @@ public class CipherStrings {
         Definitions.put(SSL_TXT_SSLV2,new Def(0,SSL_TXT_SSLV2, 0,SSL_SSLV2, 0,0,0,0,SSL_SSL_MASK,0));
         Definitions.put(SSL_TXT_SSLV3,new Def(0,SSL_TXT_SSLV3, 0,SSL_SSLV3, 0,0,0,0,SSL_SSL_MASK,0));
         Definitions.put(SSL_TXT_TLSV1,new Def(0,SSL_TXT_TLSV1, 0,SSL_TLSV1, 0,0,0,0,SSL_SSL_MASK,0));
+        Definitions.put(SSL_TXT_TLSV1_2,new Def(0,SSL_TXT_TLSV1_2, 0,SSL_TLSV1_2, 0,0,0,0,SSL_SSL_MASK,0));
         Definitions.put(SSL_TXT_EXP,new Def(0,SSL_TXT_EXP   ,0, 0,SSL_EXPORT, 0,0,0,0,SSL_EXP_MASK));
         Definitions.put(SSL_TXT_EXPORT,new Def(0,SSL_TXT_EXPORT,0, 0,SSL_EXPORT, 0,0,0,0,SSL_EXP_MASK));
         Definitions.put(SSL_TXT_EXP40,new Def(0,SSL_TXT_EXP40, 0, 0, SSL_EXP40, 0,0,0,0,SSL_STRONG_MASK));
@@ -1782,6 +1969,314 @@ public class CipherStrings {
                             SSL_ALL_STRENGTHS
                             ));
 
+        /* Cipher 003C */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_RSA_WITH_AES_128_SHA256,
+                            TLS1_CK_RSA_WITH_AES_128_SHA256,
+                            SSL_kRSA|SSL_aRSA|SSL_AES|SSL_SHA256|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 003D */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_RSA_WITH_AES_256_SHA256,
+                            TLS1_CK_RSA_WITH_AES_256_SHA256,
+                            SSL_kRSA|SSL_aRSA|SSL_AES|SSL_SHA256|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 0067 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_DHE_RSA_WITH_AES_128_SHA256,
+                            TLS1_CK_DHE_RSA_WITH_AES_128_SHA256,
+                            SSL_kEDH|SSL_aRSA|SSL_AES|SSL_SHA256|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 006B */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_DHE_RSA_WITH_AES_256_SHA256,
+                            TLS1_CK_DHE_RSA_WITH_AES_256_SHA256,
+                            SSL_kEDH|SSL_aRSA|SSL_AES|SSL_SHA256|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 009C */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_RSA_WITH_AES_128_GCM_SHA256,
+                            TLS1_CK_RSA_WITH_AES_128_GCM_SHA256,
+                            SSL_kRSA|SSL_aRSA|SSL_AESGCM|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 009D */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_RSA_WITH_AES_256_GCM_SHA384,
+                            TLS1_CK_RSA_WITH_AES_256_GCM_SHA384,
+                            SSL_kRSA|SSL_aRSA|SSL_AESGCM|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 009E */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_DHE_RSA_WITH_AES_128_GCM_SHA256,
+                            TLS1_CK_DHE_RSA_WITH_AES_128_GCM_SHA256,
+                            SSL_kEDH|SSL_aRSA|SSL_AESGCM|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 009F */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_DHE_RSA_WITH_AES_256_GCM_SHA384,
+                            TLS1_CK_DHE_RSA_WITH_AES_256_GCM_SHA384,
+                            SSL_kEDH|SSL_aRSA|SSL_AESGCM|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher C023 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_ECDSA_WITH_AES_128_SHA256,
+                            TLS1_CK_ECDHE_ECDSA_WITH_AES_128_SHA256,
+                            SSL_kECDHE|SSL_aECDSA|SSL_AES|SSL_SHA256|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher C024 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_ECDSA_WITH_AES_256_SHA384,
+                            TLS1_CK_ECDHE_ECDSA_WITH_AES_256_SHA384,
+                            SSL_kECDHE|SSL_aECDSA|SSL_AES|SSL_SHA384|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher C027 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_RSA_WITH_AES_128_SHA256,
+                            TLS1_CK_ECDHE_RSA_WITH_AES_128_SHA256,
+                            SSL_kECDHE|SSL_aRSA|SSL_AES|SSL_SHA256|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher C028 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_RSA_WITH_AES_256_SHA384,
+                            TLS1_CK_ECDHE_RSA_WITH_AES_256_SHA384,
+                            SSL_kECDHE|SSL_aRSA|SSL_AES|SSL_SHA384|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher C02B */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256,
+                            TLS1_CK_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256,
+                            SSL_kECDHE|SSL_aECDSA|SSL_AESGCM|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher C02C */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384,
+                            TLS1_CK_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384,
+                            SSL_kECDHE|SSL_aECDSA|SSL_AESGCM|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher C02F */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_RSA_WITH_AES_128_GCM_SHA256,
+                            TLS1_CK_ECDHE_RSA_WITH_AES_128_GCM_SHA256,
+                            SSL_kECDHE|SSL_aRSA|SSL_AESGCM|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher C030 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_RSA_WITH_AES_256_GCM_SHA384,
+                            TLS1_CK_ECDHE_RSA_WITH_AES_256_GCM_SHA384,
+                            SSL_kECDHE|SSL_aRSA|SSL_AESGCM|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher CCA8 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_RSA_WITH_CHACHA20_POLY1305,
+                            TLS1_CK_ECDHE_RSA_WITH_CHACHA20_POLY1305,
+                            SSL_kECDHE|SSL_aRSA|SSL_CHACHA20POLY1305|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher CCA9 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_ECDHE_ECDSA_WITH_CHACHA20_POLY1305,
+                            TLS1_CK_ECDHE_ECDSA_WITH_CHACHA20_POLY1305,
+                            SSL_kECDHE|SSL_aECDSA|SSL_CHACHA20POLY1305|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher CCAA */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_TXT_DHE_RSA_WITH_CHACHA20_POLY1305,
+                            TLS1_CK_DHE_RSA_WITH_CHACHA20_POLY1305,
+                            SSL_kEDH|SSL_aRSA|SSL_CHACHA20POLY1305|SSL_AEAD|SSL_TLSV1_2,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 1301 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_3_TXT_AES_128_GCM_SHA256,
+                            TLS1_3_CK_AES_128_GCM_SHA256,
+                            SSL_AESGCM|SSL_AEAD|SSL_TLSV1_3,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            128,
+                            128,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 1302 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_3_TXT_AES_256_GCM_SHA384,
+                            TLS1_3_CK_AES_256_GCM_SHA384,
+                            SSL_AESGCM|SSL_AEAD|SSL_TLSV1_3,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
+        /* Cipher 1303 */
+        Ciphers.add(new Def(
+                            1,
+                            TLS1_3_TXT_CHACHA20_POLY1305_SHA256,
+                            TLS1_3_CK_CHACHA20_POLY1305_SHA256,
+                            SSL_CHACHA20POLY1305|SSL_AEAD|SSL_TLSV1_3,
+                            SSL_NOT_EXP|SSL_HIGH,
+                            0,
+                            256,
+                            256,
+                            SSL_ALL_CIPHERS,
+                            SSL_ALL_STRENGTHS
+                            ));
+
         for(Def def : Ciphers) {
             CipherNames.put(def.name, def);
         }
@@ -1852,5 +2347,47 @@ public class CipherStrings {
         addAlias("SSL_CK_IDEA_128_CBC_WITH_MD5","IDEA-CBC-MD5");
         addAlias("SSL_CK_DES_64_CBC_WITH_MD5","DES-CBC-MD5");
         addAlias("SSL_CK_DES_192_EDE3_CBC_WITH_MD5","DES-CBC3-MD5");
+        addAlias("TLS_ECDH_ECDSA_WITH_NULL_SHA",TLS1_TXT_ECDH_ECDSA_WITH_NULL_SHA);
+        addAlias("TLS_ECDH_ECDSA_WITH_RC4_128_SHA",TLS1_TXT_ECDH_ECDSA_WITH_RC4_128_SHA);
+        addAlias("TLS_ECDH_ECDSA_WITH_3DES_EDE_CBC_SHA",TLS1_TXT_ECDH_ECDSA_WITH_DES_192_CBC3_SHA);
+        addAlias("TLS_ECDH_ECDSA_WITH_AES_128_CBC_SHA",TLS1_TXT_ECDH_ECDSA_WITH_AES_128_CBC_SHA);
+        addAlias("TLS_ECDH_ECDSA_WITH_AES_256_CBC_SHA",TLS1_TXT_ECDH_ECDSA_WITH_AES_256_CBC_SHA);
+        addAlias("TLS_ECDHE_ECDSA_WITH_NULL_SHA",TLS1_TXT_ECDHE_ECDSA_WITH_NULL_SHA);
+        addAlias("TLS_ECDHE_ECDSA_WITH_RC4_128_SHA",TLS1_TXT_ECDHE_ECDSA_WITH_RC4_128_SHA);
+        addAlias("TLS_ECDHE_ECDSA_WITH_3DES_EDE_CBC_SHA",TLS1_TXT_ECDHE_ECDSA_WITH_DES_192_CBC3_SHA);
+        addAlias("TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA",TLS1_TXT_ECDHE_ECDSA_WITH_AES_128_CBC_SHA);
+        addAlias("TLS_ECDHE_ECDSA_WITH_AES_256_CBC_SHA",TLS1_TXT_ECDHE_ECDSA_WITH_AES_256_CBC_SHA);
+        addAlias("TLS_ECDH_RSA_WITH_NULL_SHA",TLS1_TXT_ECDH_RSA_WITH_NULL_SHA);
+        addAlias("TLS_ECDH_RSA_WITH_RC4_128_SHA",TLS1_TXT_ECDH_RSA_WITH_RC4_128_SHA);
+        addAlias("TLS_ECDH_RSA_WITH_3DES_EDE_CBC_SHA",TLS1_TXT_ECDH_RSA_WITH_DES_192_CBC3_SHA);
+        addAlias("TLS_ECDH_RSA_WITH_AES_128_CBC_SHA",TLS1_TXT_ECDH_RSA_WITH_AES_128_CBC_SHA);
+        addAlias("TLS_ECDH_RSA_WITH_AES_256_CBC_SHA",TLS1_TXT_ECDH_RSA_WITH_AES_256_CBC_SHA);
+        addAlias("TLS_ECDHE_RSA_WITH_NULL_SHA",TLS1_TXT_ECDHE_RSA_WITH_NULL_SHA);
+        addAlias("TLS_ECDHE_RSA_WITH_RC4_128_SHA",TLS1_TXT_ECDHE_RSA_WITH_RC4_128_SHA);
+        addAlias("TLS_ECDHE_RSA_WITH_3DES_EDE_CBC_SHA",TLS1_TXT_ECDHE_RSA_WITH_DES_192_CBC3_SHA);
+        addAlias("TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA",TLS1_TXT_ECDHE_RSA_WITH_AES_128_CBC_SHA);
+        addAlias("TLS_ECDHE_RSA_WITH_AES_256_CBC_SHA",TLS1_TXT_ECDHE_RSA_WITH_AES_256_CBC_SHA);
+        addAlias("TLS_RSA_WITH_AES_128_CBC_SHA256","AES128-SHA256");
+        addAlias("TLS_RSA_WITH_AES_256_CBC_SHA256","AES256-SHA256");
+        addAlias("TLS_DHE_RSA_WITH_AES_128_CBC_SHA256","DHE-RSA-AES128-SHA256");
+        addAlias("TLS_DHE_RSA_WITH_AES_256_CBC_SHA256","DHE-RSA-AES256-SHA256");
+        addAlias("TLS_RSA_WITH_AES_128_GCM_SHA256","AES128-GCM-SHA256");
+        addAlias("TLS_RSA_WITH_AES_256_GCM_SHA384","AES256-GCM-SHA384");
+        addAlias("TLS_DHE_RSA_WITH_AES_128_GCM_SHA256","DHE-RSA-AES128-GCM-SHA256");
+        addAlias("TLS_DHE_RSA_WITH_AES_256_GCM_SHA384","DHE-RSA-AES256-GCM-SHA384");
+        addAlias("TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256","ECDHE-ECDSA-AES128-SHA256");
+        addAlias("TLS_ECDHE_ECDSA_WITH_AES_256_CBC_SHA384","ECDHE-ECDSA-AES256-SHA384");
+        addAlias("TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256","ECDHE-RSA-AES128-SHA256");
+        addAlias("TLS_ECDHE_RSA_WITH_AES_256_CBC_SHA384","ECDHE-RSA-AES256-SHA384");
+        addAlias("TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256","ECDHE-ECDSA-AES128-GCM-SHA256");
+        addAlias("TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384","ECDHE-ECDSA-AES256-GCM-SHA384");
+        addAlias("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256","ECDHE-RSA-AES128-GCM-SHA256");
+        addAlias("TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384","ECDHE-RSA-AES256-GCM-SHA384");
+        addAlias("TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256","ECDHE-RSA-CHACHA20-POLY1305");
+        addAlias("TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256","ECDHE-ECDSA-CHACHA20-POLY1305");
+        addAlias("TLS_DHE_RSA_WITH_CHACHA20_POLY1305_SHA256","DHE-RSA-CHACHA20-POLY1305");
+        addAlias("TLS_AES_128_GCM_SHA256","TLS_AES_128_GCM_SHA256");
+        addAlias("TLS_AES_256_GCM_SHA384","TLS_AES_256_GCM_SHA384");
+        addAlias("TLS_CHACHA20_POLY1305_SHA256","TLS_CHACHA20_POLY1305_SHA256");
 	}
 }// CipherStrings
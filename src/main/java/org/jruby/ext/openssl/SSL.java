@@ -54,9 +54,19 @@ public class SSL {
     public static final long OP_NO_SSLv2 =                                  0x01000000L; // supported
     public static final long OP_NO_SSLv3 =                                  0x02000000L; // supported
     public static final long OP_NO_TLSv1 =                                  0x04000000L; // supported
-    public static final long OP_PKCS1_CHECK_1 =                             0x08000000L;
-    public static final long OP_PKCS1_CHECK_2 =                             0x10000000L;
-    public static final long OP_NETSCAPE_CA_DN_BUG =                        0x20000000L;
+    public static final long OP_NO_TLSv1_2 =                                0x08000000L; // supported
+    public static final long OP_NO_TLSv1_1 =                                0x10000000L; // supported
+    public static final long OP_NO_TLSv1_3 =                                0x20000000L; // supported
+    // NOTE: bits re-used for TLSv1.x (as with OpenSSL), these are no-ops since 1.0.1
+    public static final long OP_PKCS1_CHECK_1 =                             0x0L;
+    public static final long OP_PKCS1_CHECK_2 =                             0x0L;
+    public static final long OP_NETSCAPE_CA_DN_BUG =                        0x0L;
+
+    public static final int SSL3_VERSION =                                  0x0300;
+    public static final int TLS1_VERSION =                                  0x0301;
+    public static final int TLS1_1_VERSION =                                0x0302;
+    public static final int TLS1_2_VERSION =                                0x0303;
+    public static final int TLS1_3_VERSION =                                0x0304;
     public static final long OP_NETSCAPE_DEMO_CIPHER_CHANGE_BUG =           0x40000000L;
 
     public static void createSSL(final Ruby runtime, final RubyModule ossl) {
@@ -77,6 +87,9 @@ public class SSL {
 
         SSLContext.createSSLContext(runtime, _SSL);
         SSLSocket.createSSLSocket(runtime, _SSL);
+        SSLSession.createSession(runtime, _SSL);
+        SSLMemoryEngine.createSSLEngine(runtime, _SSL);
+        SSLReactor.createReactor(runtime, _SSL);
 
         _SSL.setConstant("VERIFY_NONE", runtime.newFixnum(VERIFY_NONE));
         _SSL.setConstant("VERIFY_PEER", runtime.newFixnum(VERIFY_PEER));
@@ -94,10 +107,19 @@ public class SSL {
         _SSL.setConstant("OP_NO_SSLv2", runtime.newFixnum(OP_NO_SSLv2));
         _SSL.setConstant("OP_NO_SSLv3", runtime.newFixnum(OP_NO_SSLv3));
         _SSL.setConstant("OP_NO_TLSv1", runtime.newFixnum(OP_NO_TLSv1));
+        _SSL.setConstant("OP_NO_TLSv1_1", runtime.newFixnum(OP_NO_TLSv1_1));
+        _SSL.setConstant("OP_NO_TLSv1_2", runtime.newFixnum(OP_NO_TLSv1_2));
+        _SSL.setConstant("OP_NO_TLSv1_3", runtime.newFixnum(OP_NO_TLSv1_3));
         _SSL.setConstant("OP_PKCS1_CHECK_1", runtime.newFixnum(OP_PKCS1_CHECK_1));
         _SSL.setConstant("OP_PKCS1_CHECK_2", runtime.newFixnum(OP_PKCS1_CHECK_2));
         _SSL.setConstant("OP_NETSCAPE_CA_DN_BUG", runtime.newFixnum(OP_NETSCAPE_CA_DN_BUG));
         _SSL.setConstant("OP_NETSCAPE_DEMO_CIPHER_CHANGE_BUG", runtime.newFixnum(OP_NETSCAPE_DEMO_CIPHER_CHANGE_BUG));
+
+        _SSL.setConstant("SSL3_VERSION", runtime.newFixnum(SSL3_VERSION));
+        _SSL.setConstant("TLS1_VERSION", runtime.newFixnum(TLS1_VERSION));
+        _SSL.setConstant("TLS1_1_VERSION", runtime.newFixnum(TLS1_1_VERSION));
+        _SSL.setConstant("TLS1_2_VERSION", runtime.newFixnum(TLS1_2_VERSION));
+        _SSL.setConstant("TLS1_3_VERSION", runtime.newFixnum(TLS1_3_VERSION));
     }
 
     @Deprecated // confusing since it throws instead of returning
@@ -27,15 +27,34 @@
  ***** END LICENSE BLOCK *****/
 package org.jruby.ext.openssl;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.cert.CertificateException;
@@ -43,6 +62,8 @@ import java.security.cert.X509Certificate;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509TrustManager;
@@ -50,10 +71,12 @@ import javax.net.ssl.X509TrustManager;
 import org.jruby.Ruby;
 import org.jruby.RubyArray;
 import org.jruby.RubyClass;
+import org.jruby.RubyHash;
 import org.jruby.RubyModule;
 import org.jruby.RubyNumeric;
 import org.jruby.RubyObject;
 import org.jruby.RubyString;
+import org.jruby.RubyTime;
 import org.jruby.anno.JRubyMethod;
 import org.jruby.common.IRubyWarnings.ID;
 import org.jruby.exceptions.RaiseException;
@@ -75,6 +98,9 @@ import org.jruby.ext.openssl.x509store.X509AuxCertificate;
 import org.jruby.ext.openssl.x509store.X509Object;
 import org.jruby.ext.openssl.x509store.X509Utils;
 
+import static org.jruby.ext.openssl.SSL._SSL;
+import static org.jruby.ext.openssl.OpenSSLReal.debug;
+
 /**
  * @author <a href="mailto:ola.bini@ki.se">Ola Bini</a>
  */
@@ -109,17 +135,46 @@ public class SSLContext extends RubyObject {
         SSL_VERSION_OSSL2JSSE.put("SSLv23", "SSL");
         SSL_VERSION_OSSL2JSSE.put("SSLv23_server", "SSL");
         SSL_VERSION_OSSL2JSSE.put("SSLv23_client", "SSL");
-        ENABLED_PROTOCOLS.put("SSL", new String[] { "SSLv2", "SSLv3", "TLSv1" });
+        ENABLED_PROTOCOLS.put("SSL", new String[] { "SSLv2", "SSLv3", "TLSv1", "TLSv1.1", "TLSv1.2", "TLSv1.3" });
+
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_1", "TLSv1.1");
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_1_server", "TLSv1.1");
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_1_client", "TLSv1.1");
+
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_2", "TLSv1.2");
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_2_server", "TLSv1.2");
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_2_client", "TLSv1.2");
+        ENABLED_PROTOCOLS.put("TLSv1.2", new String[] { "TLSv1.2" });
+
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_3", "TLSv1.3");
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_3_server", "TLSv1.3");
+        SSL_VERSION_OSSL2JSSE.put("TLSv1_3_client", "TLSv1.3");
+        ENABLED_PROTOCOLS.put("TLSv1.3", new String[] { "TLSv1.3" });
 
         // Followings(TLS, TLSv1.1) are JSSE only methods at present. Let's allow user to use it.
 
         SSL_VERSION_OSSL2JSSE.put("TLS", "TLS");
-        ENABLED_PROTOCOLS.put("TLS", new String[] { "TLSv1", "TLSv1.1" });
+        ENABLED_PROTOCOLS.put("TLS", new String[] { "TLSv1", "TLSv1.1", "TLSv1.2", "TLSv1.3" });
 
         SSL_VERSION_OSSL2JSSE.put("TLSv1.1", "TLSv1.1");
         ENABLED_PROTOCOLS.put("TLSv1.1", new String[] { "TLSv1.1" });
     }
 
+    static final int SESSION_CACHE_OFF = 0x0000;
+    static final int SESSION_CACHE_CLIENT = 0x0001;
+    static final int SESSION_CACHE_SERVER = 0x0002;
+    static final int SESSION_CACHE_BOTH = SESSION_CACHE_CLIENT | SESSION_CACHE_SERVER;
+    static final int SESSION_CACHE_NO_AUTO_CLEAR = 0x0080;
+    static final int SESSION_CACHE_NO_INTERNAL_LOOKUP = 0x0100;
+    static final int SESSION_CACHE_NO_INTERNAL_STORE = 0x0200;
+    static final int SESSION_CACHE_NO_INTERNAL = SESSION_CACHE_NO_INTERNAL_LOOKUP | SESSION_CACHE_NO_INTERNAL_STORE;
+
+    // SSL_SESSION_CACHE_MAX_SIZE_DEFAULT
+    static final int SESSION_CACHE_SIZE_DEFAULT = 1024 * 20;
+
+    static final int RECORD_THRESHOLD_DEFAULT = 1024 * 1024;
+    static final long RECORD_IDLE_TIMEOUT_DEFAULT = 1000;
+
     private static ObjectAllocator SSLCONTEXT_ALLOCATOR = new ObjectAllocator() {
         public IRubyObject allocate(Ruby runtime, RubyClass klass) {
             return new SSLContext(runtime, klass);
@@ -133,7 +188,11 @@ public class SSLContext extends RubyObject {
             "cert", "key", "client_ca", "ca_file", "ca_path",
             "timeout", "verify_mode", "verify_depth",
             "verify_callback", "options", "cert_store", "extra_chain_cert",
-            "client_cert_cb", "tmp_dh_callback", "session_id_context"
+            "client_cert_cb", "tmp_dh_callback", "session_id_context",
+            "session_get_cb", "session_new_cb", "session_remove_cb",
+            "servername_cb", "alpn_protocols", "alpn_select_cb",
+            "delegated_task_threads", "verify_cache_timeout",
+            "dynamic_record_threshold", "dynamic_record_idle_timeout"
         };
         final ThreadContext context = runtime.getCurrentContext();
         for ( int i = 0; i < attributes.length; i++ ) {
@@ -154,11 +213,15 @@ public class SSLContext extends RubyObject {
         // in 1.8.7 as well as 1.9.3 :
         // [:TLSv1, :TLSv1_server, :TLSv1_client, :SSLv3, :SSLv3_server, :SSLv3_client, :SSLv23, :SSLv23_server, :SSLv23_client]
 
-        // MRI (1.9.3) has a bunch of SESSION_CACHE constants :
-        // :SESSION_CACHE_OFF, :SESSION_CACHE_CLIENT, :SESSION_CACHE_SERVER,
-        // :SESSION_CACHE_BOTH, :SESSION_CACHE_NO_AUTO_CLEAR, :SESSION_CACHE_NO_INTERNAL_LOOKUP,
-        // :SESSION_CACHE_NO_INTERNAL_STORE, :SESSION_CACHE_NO_INTERNAL,
-        //
+        _SSLContext.setConstant("SESSION_CACHE_OFF", runtime.newFixnum(SESSION_CACHE_OFF));
+        _SSLContext.setConstant("SESSION_CACHE_CLIENT", runtime.newFixnum(SESSION_CACHE_CLIENT));
+        _SSLContext.setConstant("SESSION_CACHE_SERVER", runtime.newFixnum(SESSION_CACHE_SERVER));
+        _SSLContext.setConstant("SESSION_CACHE_BOTH", runtime.newFixnum(SESSION_CACHE_BOTH));
+        _SSLContext.setConstant("SESSION_CACHE_NO_AUTO_CLEAR", runtime.newFixnum(SESSION_CACHE_NO_AUTO_CLEAR));
+        _SSLContext.setConstant("SESSION_CACHE_NO_INTERNAL_LOOKUP", runtime.newFixnum(SESSION_CACHE_NO_INTERNAL_LOOKUP));
+        _SSLContext.setConstant("SESSION_CACHE_NO_INTERNAL_STORE", runtime.newFixnum(SESSION_CACHE_NO_INTERNAL_STORE));
+        _SSLContext.setConstant("SESSION_CACHE_NO_INTERNAL", runtime.newFixnum(SESSION_CACHE_NO_INTERNAL));
+
         // NOTE probably worth doing are :
         // OpenSSL::SSL::SSLContext::DEFAULT_CERT_STORE
         // => #<OpenSSL::X509::Store:0x00000001c69f48>
@@ -181,10 +244,21 @@ public class SSLContext extends RubyObject {
     private boolean protocolForClient = true;
     private PKey t_key;
     private X509Cert t_cert;
-    /* TODO: should move to SSLSession after implemented */
-    private int verifyResult = 1; /* avoid 0 (= X509_V_OK) just in case */
+    // unlike OpenSSL (SESSION_CACHE_SERVER) JSSE only resumes (client) sessions from its cache
+    private int minVersion = 0; // 0 - no limit
+    private int maxVersion = 0;
+    private int sessionCacheMode = SESSION_CACHE_BOTH;
+    private int sessionCacheSize = SESSION_CACHE_SIZE_DEFAULT;
+    // dynamic record sizing - small records till threshold bytes got written (since idle)
+    private int recordThreshold = RECORD_THRESHOLD_DEFAULT;
+    private long recordIdleTimeout = RECORD_IDLE_TIMEOUT_DEFAULT; // millis
 
     private InternalContext internalContext;
+    private boolean sharedContext; // internalContext might be used by other contexts
+    // marks (JSSE) sessions established through this context (in a shared cache)
+    private final Object sessionOwner = new Object();
+
+    private final SSLStatistics statistics = new SSLStatistics();
 
     @JRubyMethod(rest=true, visibility = Visibility.PRIVATE)
     public IRubyObject initialize(IRubyObject[] args) {
@@ -197,12 +271,18 @@ public class SSLContext extends RubyObject {
 
         if ( isFrozen() ) return runtime.getNil();
 
+        final IRubyObject sessionGetCallback = getInstanceVariable("@session_get_cb");
+        if ( sessionGetCallback != null && ! sessionGetCallback.isNil() ) {
+            throw runtime.newNotImplementedError("session_get_cb is not supported (no external session cache lookups)");
+        }
+
         this.freeze(context);
 
-        internalContext = new InternalContext();
+        final InternalContext internalContext = new InternalContext();
         internalContext.protocol = protocol;
         internalContext.protocolForServer = protocolForServer;
         internalContext.protocolForClient = protocolForClient;
+        internalContext.sessionCacheSize = sessionCacheSize;
 
         // TODO: handle tmp_dh_callback
 
@@ -263,18 +343,6 @@ public class SSLContext extends RubyObject {
             }
         }
 
-        String caFile = getCaFile();
-        String caPath = getCaPath();
-        if (caFile != null || caPath != null) {
-            try {
-                if (internalContext.store.loadLocations(caFile, caPath) == 0) {
-                    runtime.getWarnings().warn(ID.MISCELLANEOUS, "can't set verify locations");
-                }
-            } catch (Exception e) {
-                throw newSSLError(runtime, e.getMessage());
-            }
-        }
-
         value = getInstanceVariable("@verify_mode");
         if (value != null && !value.isNil()) {
             internalContext.verifyMode = RubyNumeric.fix2int(value);
@@ -293,51 +361,221 @@ public class SSLContext extends RubyObject {
             internalContext.timeout = RubyNumeric.fix2int(value);
         }
 
+        int taskThreads = 0;
+        value = getInstanceVariable("@delegated_task_threads");
+        if (value != null && !value.isNil()) {
+            taskThreads = RubyNumeric.fix2int(value);
+        }
+
+        value = getInstanceVariable("@verify_cache_timeout");
+        if (value != null && !value.isNil()) {
+            internalContext.verifyCacheTimeout = RubyNumeric.fix2int(value);
+        }
+
+        // NOTE: not part of the (shared) JSSE context, record sizing is done by SSLSocket
+        value = getInstanceVariable("@dynamic_record_threshold");
+        if (value != null && !value.isNil()) {
+            recordThreshold = value == runtime.getFalse() ? 0 : RubyNumeric.fix2int(value);
+        }
+
+        value = getInstanceVariable("@dynamic_record_idle_timeout");
+        if (value != null && !value.isNil()) {
+            recordIdleTimeout = (long) ( RubyNumeric.num2dbl(value) * 1000 );
+        }
+
+        // NOTE: kept with the context, the (possibly shared) cert_store is not changed
         value = getInstanceVariable("@verify_depth");
         if (value != null && !value.isNil()) {
-            internalContext.store.setDepth(RubyNumeric.fix2int(value));
-        } else {
-            internalContext.store.setDepth(-1);
+            internalContext.verifyDepth = RubyNumeric.fix2int(value);
         }
 
-        /* TODO: should be implemented for SSLSession
-    val = ossl_sslctx_get_sess_id_ctx(self);
-    if (!NIL_P(val)){
-        StringValue(val);
-        if (!SSL_CTX_set_session_id_context(ctx, (unsigned char *)RSTRING_PTR(val),
-                                            RSTRING_LEN(val))){
-            ossl_raise(eSSLError, "SSL_CTX_set_session_id_context:");
+        // NOTE: session_id_context has no JSSE counterpart - it is part of the shared
+        // context key, thus (server) sessions are only resumed by contexts set up with
+        // the same session_id_context (each JSSE context has its own session cache). @session_new_cb and @session_remove_cb are
+        // called from sessionEstablished and removeSession, while JSSE does not
+        // allow to plug in a (server) session lookup thus @session_get_cb is refused (above).
+        internalContext.serverSessionCache = isSessionCacheServer();
+
+        value = getInstanceVariable("@servername_cb");
+        if (value != null && !value.isNil()) {
+            internalContext.servernameCallback = value;
         }
-    }
 
-    if (RTEST(rb_iv_get(self, "@session_get_cb"))) {
-        SSL_CTX_sess_set_get_cb(ctx, ossl_sslctx_session_get_cb);
-        OSSL_Debug("SSL SESSION get callback added");
-    }
-    if (RTEST(rb_iv_get(self, "@session_new_cb"))) {
-        SSL_CTX_sess_set_new_cb(ctx, ossl_sslctx_session_new_cb);
-        OSSL_Debug("SSL SESSION new callback added");
-    }
-    if (RTEST(rb_iv_get(self, "@session_remove_cb"))) {
-        SSL_CTX_sess_set_remove_cb(ctx, ossl_sslctx_session_remove_cb);
-        OSSL_Debug("SSL SESSION remove callback added");
-    }
+        value = getInstanceVariable("@alpn_protocols");
+        if (value != null && !value.isNil()) {
+            final RubyArray protocols = (RubyArray) value.callMethod(context, "to_a");
+            final String[] alpnProtocols = new String[ protocols.size() ];
+            for ( int i = 0; i < alpnProtocols.length; i++ ) {
+                alpnProtocols[i] = protocols.entry(i).asString().toString();
+            }
+            internalContext.alpnProtocols = alpnProtocols;
+        }
+        value = getInstanceVariable("@alpn_select_cb");
+        if (value != null && !value.isNil()) {
+            internalContext.alpnSelectCallback = value;
+        }
+        if ( ( internalContext.alpnProtocols != null || internalContext.alpnSelectCallback != null ) && setApplicationProtocols == null ) {
+            debug(runtime, "SSLContext ALPN not supported (needs Java 9 or 8u252+)");
+        }
 
-    val = rb_iv_get(self, "@servername_cb");
-    if (!NIL_P(val)) {
-        SSL_CTX_set_tlsext_servername_callback(ctx, ssl_servername_cb);
-        OSSL_Debug("SSL TLSEXT servername callback added");
-    }
-         */
+        final String caFile = getCaFile();
+        final String caPath = getCaPath();
+
+        // identically set-up contexts (w/o Ruby callbacks) share the JSSE context
+        final ByteBuffer sharedKey = sharedContextKey(internalContext, certStore, caFile, caPath, taskThreads);
+        if ( sharedKey != null ) {
+            final InternalContext shared = getSharedContext(sharedKey);
+            if ( shared != null ) {
+                this.internalContext = shared;
+                this.sharedContext = true;
+                registerStatistics(runtime);
+                return runtime.getTrue();
+            }
+        }
+
+        if (caFile != null || caPath != null) {
+            try {
+                if (internalContext.store.loadLocations(caFile, caPath) == 0) {
+                    runtime.getWarnings().warn(ID.MISCELLANEOUS, "can't set verify locations");
+                }
+            } catch (Exception e) {
+                throw newSSLError(runtime, e.getMessage());
+            }
+        }
+
+        if ( taskThreads > 0 ) {
+            internalContext.taskExecutor = newTaskExecutor(taskThreads);
+        }
 
         try {
             internalContext.init();
+            // resolved (once) from the cipher string and (protocol) options
+            final SSLEngine engine = internalContext.getSSLContext().createSSLEngine();
+            internalContext.cipherSuites = getCipherSuites(engine.getSupportedCipherSuites());
+            internalContext.enabledProtocols = getEnabledProtocols(engine);
         } catch(GeneralSecurityException gse) {
             throw newSSLError(runtime, gse.getMessage());
         }
+
+        this.internalContext = sharedKey == null ? internalContext : putSharedContext(sharedKey, internalContext);
+        this.sharedContext = sharedKey != null;
+        registerStatistics(runtime);
         return runtime.getTrue();
     }
 
+    private void registerStatistics(final Ruby runtime) {
+        if ( SSLStatistics.JMX ) {
+            try {
+                statistics.register("SSLContext@" + Integer.toHexString(System.identityHashCode(this)));
+            }
+            catch (javax.management.JMException e) {
+                debug(runtime, "SSLContext failed registering statistics MBean", e);
+            }
+        }
+    }
+
+    private static final boolean SHARED_CONTEXTS = ! "false".equals( System.getProperty("jruby.openssl.ssl.shared_contexts") );
+
+    // JVM wide: configuration fingerprint -> (JSSE) context, shared by identically set-up contexts
+    private static final Map<ByteBuffer, WeakReference<InternalContext>> sharedContexts =
+        new HashMap<ByteBuffer, WeakReference<InternalContext>>();
+
+    private static InternalContext getSharedContext(final ByteBuffer key) {
+        synchronized (sharedContexts) {
+            final WeakReference<InternalContext> ref = sharedContexts.get(key);
+            return ref == null ? null : ref.get();
+        }
+    }
+
+    private static InternalContext putSharedContext(final ByteBuffer key, final InternalContext context) {
+        synchronized (sharedContexts) {
+            final InternalContext existing = getSharedContext(key);
+            if ( existing != null ) return existing; // set-up concurrently
+            final Iterator<WeakReference<InternalContext>> it = sharedContexts.values().iterator();
+            while ( it.hasNext() ) {
+                if ( it.next().get() == null ) it.remove();
+            }
+            sharedContexts.put(key, new WeakReference<InternalContext>(context));
+        }
+        return context;
+    }
+
+    // callbacks (besides verify_callback, servername_cb and alpn_select_cb) a shared context can not have
+    private static final String[] UNSHARED_CALLBACKS = {
+        "@client_cert_cb", "@tmp_dh_callback", "@session_get_cb", "@session_new_cb", "@session_remove_cb"
+    };
+
+    /**
+     * @return a fingerprint of the effective configuration, null if the context
+     * should not be shared (e.g. Ruby callbacks are set)
+     */
+    private ByteBuffer sharedContextKey(final InternalContext internalContext,
+        final X509Store certStore, final String caFile, final String caPath, final int taskThreads) {
+        if ( ! SHARED_CONTEXTS ) return null;
+        if ( internalContext.hasCallbacks() ) return null;
+        for ( String name : UNSHARED_CALLBACKS ) {
+            final IRubyObject callback = getInstanceVariable(name);
+            if ( callback != null && ! callback.isNil() ) return null;
+        }
+        try {
+            final java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream(512);
+            final java.io.DataOutputStream out = new java.io.DataOutputStream(bytes);
+            out.writeUTF(protocol); out.writeBoolean(protocolForServer); out.writeBoolean(protocolForClient);
+            out.writeUTF(ciphers); out.writeLong(getOptions());
+            out.writeInt(minVersion); out.writeInt(maxVersion);
+            out.writeInt(sessionCacheMode); out.writeInt(sessionCacheSize);
+            out.writeInt(internalContext.timeout); out.writeInt(taskThreads);
+            out.writeInt(internalContext.verifyMode); out.writeInt(internalContext.verifyCacheTimeout);
+            // a cert_store is never shared (by contexts not using it)
+            out.writeBoolean(certStore != null);
+            if ( certStore != null ) out.writeLong(internalContext.store.getId());
+            // CA locations are loaded (once) on setup, changed files are re-loaded
+            writeLocation(out, caFile); writeLocation(out, caPath);
+            out.writeInt(internalContext.verifyDepth);
+            out.writeLong(internalContext.store.verifyParameter.flags);
+            if ( internalContext.privateKey != null ) {
+                out.writeUTF(internalContext.keyAlgorithm);
+                writeEncoded(out, internalContext.privateKey.getEncoded());
+                writeEncoded(out, internalContext.cert.getEncoded());
+            }
+            if ( internalContext.extraChainCert != null ) {
+                out.writeInt(internalContext.extraChainCert.size());
+                for ( X509AuxCertificate x : internalContext.extraChainCert ) writeEncoded(out, x.getEncoded());
+            }
+            out.writeInt(internalContext.clientCert.size());
+            for ( X509AuxCertificate x : internalContext.clientCert ) writeEncoded(out, x.getEncoded());
+            if ( internalContext.alpnProtocols != null ) {
+                for ( String protocol : internalContext.alpnProtocols ) out.writeUTF(protocol);
+            }
+            // contexts with a different session_id_context do not resume each other's sessions
+            final IRubyObject sessionIdContext = getInstanceVariable("@session_id_context");
+            writeEncoded(out, sessionIdContext == null || sessionIdContext.isNil() ?
+                    null : sessionIdContext.convertToString().getBytes());
+            out.flush();
+            final MessageDigest digest = SecurityHelper.getMessageDigest("SHA-256");
+            return ByteBuffer.wrap( digest.digest( bytes.toByteArray() ) );
+        }
+        catch (GeneralSecurityException e) {
+            debug(getRuntime(), "SSLContext failed computing shared context key", e);
+            return null;
+        }
+        catch (java.io.IOException e) {
+            return null; // won't happen
+        }
+    }
+
+    private static void writeLocation(final java.io.DataOutputStream out, final String path) throws java.io.IOException {
+        if ( path == null ) { out.writeBoolean(false); return; }
+        final java.io.File file = new java.io.File(path);
+        out.writeBoolean(true); out.writeUTF(file.getAbsolutePath());
+        out.writeLong(file.lastModified()); out.writeLong(file.length());
+    }
+
+    private static void writeEncoded(final java.io.DataOutputStream out, final byte[] encoded) throws java.io.IOException {
+        if ( encoded == null ) { out.writeInt(-1); return; }
+        out.writeInt(encoded.length); out.write(encoded);
+    }
+
     @JRubyMethod
     @SuppressWarnings("unchecked")
     public IRubyObject ciphers(final ThreadContext context) {
@@ -349,7 +587,7 @@ public class SSLContext extends RubyObject {
 
         final ArrayList<RubyArray> cipherList = new ArrayList<RubyArray>();
         try {
-            String[] supported = getCipherSuites( createDummySSLEngine() );
+            String[] supported = getCipherSuites( getSupportedCipherSuites() );
             List<CipherStrings.Def> ciphs = CipherStrings.getMatchingCiphers(ciphers, supported);
             cipherList.ensureCapacity( ciphs.size() );
 
@@ -393,6 +631,232 @@ public class SSLContext extends RubyObject {
         return val;
     }
 
+    @JRubyMethod(name = "session_cache_mode")
+    public IRubyObject session_cache_mode(final ThreadContext context) {
+        return context.runtime.newFixnum(sessionCacheMode);
+    }
+
+    @JRubyMethod(name = "session_cache_mode=")
+    public IRubyObject set_session_cache_mode(final ThreadContext context, final IRubyObject mode) {
+        final int cacheMode = RubyNumeric.fix2int(mode);
+        // server sessions are always looked up (by JSSE) from the internal cache
+        if ( ( cacheMode & SESSION_CACHE_SERVER ) != 0 && ( cacheMode & SESSION_CACHE_NO_INTERNAL_LOOKUP ) != 0 ) {
+            throw context.runtime.newNotImplementedError("SESSION_CACHE_NO_INTERNAL_LOOKUP is not supported for server sessions");
+        }
+        sessionCacheMode = cacheMode;
+        if ( internalContext != null && internalContext.serverSessionCache != isSessionCacheServer() ) {
+            unshareContext().setServerSessionCache(isSessionCacheServer());
+        }
+        return mode;
+    }
+
+    // NOTE: SESSION_CACHE_NO_INTERNAL_STORE (and NO_AUTO_CLEAR) are accepted but JSSE still keeps
+    // sessions in its cache - it only resumes from there (e.g. a session= set on a client socket)
+
+    boolean isSessionCacheClient() {
+        return ( sessionCacheMode & SESSION_CACHE_CLIENT ) != 0;
+    }
+
+    boolean isSessionCacheServer() {
+        return ( sessionCacheMode & SESSION_CACHE_SERVER ) != 0;
+    }
+
+    @JRubyMethod(name = "session_cache_size")
+    public IRubyObject session_cache_size(final ThreadContext context) {
+        return context.runtime.newFixnum(sessionCacheSize);
+    }
+
+    @JRubyMethod(name = "session_cache_size=")
+    public IRubyObject set_session_cache_size(final ThreadContext context, final IRubyObject size) {
+        final int cacheSize = RubyNumeric.fix2int(size);
+        if ( cacheSize < 0 ) {
+            throw context.runtime.newArgumentError("negative session cache size");
+        }
+        sessionCacheSize = cacheSize;
+        if ( internalContext != null ) unshareContext().setSessionCacheSize(cacheSize);
+        return size;
+    }
+
+    // a context re-configured (after setup) stops using the shared JSSE context
+    private synchronized InternalContext unshareContext() {
+        if ( sharedContext ) {
+            try {
+                internalContext = internalContext.copy();
+            }
+            catch (GeneralSecurityException e) {
+                throw newSSLError(getRuntime(), e.getMessage());
+            }
+            sharedContext = false;
+        }
+        return internalContext;
+    }
+
+    /**
+     * Same keys as MRI (:cache_hits are resumed sessions, on both the client
+     * and server side) plus :handshakes_failed, :bytes_read, :bytes_written
+     * (network) and :handshake_time, :delegated_task_time, :verify_time hashes
+     * with the (:count, :mean, :p50, :p99 and :max) times in milliseconds.
+     */
+    @JRubyMethod(name = "session_cache_stats")
+    public IRubyObject session_cache_stats(final ThreadContext context) {
+        final Ruby runtime = context.runtime;
+        final SSLStatistics stats = statistics;
+        final RubyHash hash = RubyHash.newHash(runtime);
+        int cacheNum = 0;
+        if ( internalContext != null ) { // only sessions established by this context
+            final javax.net.ssl.SSLContext sslContext = internalContext.getSSLContext();
+            cacheNum += countSessions(sslContext.getServerSessionContext());
+            cacheNum += countSessions(sslContext.getClientSessionContext());
+        }
+        hash.op_aset(context, runtime.newSymbol("cache_num"), runtime.newFixnum(cacheNum));
+        hash.op_aset(context, runtime.newSymbol("connect"), runtime.newFixnum(stats.connects.get()));
+        hash.op_aset(context, runtime.newSymbol("connect_good"), runtime.newFixnum(stats.connectsGood.get()));
+        hash.op_aset(context, runtime.newSymbol("connect_renegotiate"), runtime.newFixnum(0));
+        hash.op_aset(context, runtime.newSymbol("accept"), runtime.newFixnum(stats.accepts.get()));
+        hash.op_aset(context, runtime.newSymbol("accept_good"), runtime.newFixnum(stats.acceptsGood.get()));
+        hash.op_aset(context, runtime.newSymbol("accept_renegotiate"), runtime.newFixnum(0));
+        hash.op_aset(context, runtime.newSymbol("cache_hits"), runtime.newFixnum(stats.resumed.get()));
+        hash.op_aset(context, runtime.newSymbol("cb_hits"), runtime.newFixnum(0));
+        // JSSE does not tell about failed session look-ups or evictions
+        hash.op_aset(context, runtime.newSymbol("cache_misses"), runtime.newFixnum(0));
+        hash.op_aset(context, runtime.newSymbol("cache_full"), runtime.newFixnum(0));
+        hash.op_aset(context, runtime.newSymbol("timeouts"), runtime.newFixnum(0));
+
+        hash.op_aset(context, runtime.newSymbol("handshakes_failed"), runtime.newFixnum(stats.failed.get()));
+        hash.op_aset(context, runtime.newSymbol("bytes_read"), runtime.newFixnum(stats.bytesRead.get()));
+        hash.op_aset(context, runtime.newSymbol("bytes_written"), runtime.newFixnum(stats.bytesWritten.get()));
+        hash.op_aset(context, runtime.newSymbol("handshake_time"), toHash(context, stats.handshakeTime));
+        hash.op_aset(context, runtime.newSymbol("delegated_task_time"), toHash(context, stats.taskTime));
+        hash.op_aset(context, runtime.newSymbol("verify_time"), toHash(context, stats.verifyTime));
+        return hash;
+    }
+
+    private static RubyHash toHash(final ThreadContext context, final SSLStatistics.Histogram histogram) {
+        final Ruby runtime = context.runtime;
+        final RubyHash hash = RubyHash.newHash(runtime);
+        hash.op_aset(context, runtime.newSymbol("count"), runtime.newFixnum(histogram.count()));
+        hash.op_aset(context, runtime.newSymbol("mean"), runtime.newFloat(histogram.mean()));
+        hash.op_aset(context, runtime.newSymbol("p50"), runtime.newFloat(histogram.percentile(0.50)));
+        hash.op_aset(context, runtime.newSymbol("p99"), runtime.newFloat(histogram.percentile(0.99)));
+        hash.op_aset(context, runtime.newSymbol("max"), runtime.newFloat(histogram.max()));
+        return hash;
+    }
+
+    private int countSessions(final SSLSessionContext sessionContext) {
+        int count = 0;
+        final Enumeration<byte[]> ids = sessionContext.getIds();
+        while ( ids.hasMoreElements() ) {
+            if ( isOwnSession( sessionContext.getSession( ids.nextElement() ) ) ) count++;
+        }
+        return count;
+    }
+
+    // NOTE: identically set-up contexts share the JSSE (session) cache
+    private boolean isOwnSession(final javax.net.ssl.SSLSession session) {
+        if ( session == null ) return false;
+        return ! sharedContext || session.getValue(SESSION_OWNER) == sessionOwner;
+    }
+
+    /**
+     * @return bytes written using small records (after a connection is
+     * established or was idle), 0 if dynamic record sizing is disabled
+     */
+    int getRecordThreshold() {
+        return recordThreshold;
+    }
+
+    long getRecordIdleTimeout() {
+        return recordIdleTimeout;
+    }
+
+    SSLStatistics getStatistics() {
+        return statistics;
+    }
+
+    @JRubyMethod(name = "flush_sessions", optional = 1)
+    public IRubyObject flush_sessions(final ThreadContext context, final IRubyObject[] args) {
+        final long time;
+        if ( args.length > 0 && ! args[0].isNil() ) {
+            if ( ! ( args[0] instanceof RubyTime ) ) {
+                throw context.runtime.newTypeError("expected Time but got " + args[0].getMetaClass().getName());
+            }
+            time = ((RubyTime) args[0]).getJavaDate().getTime();
+        }
+        else {
+            time = System.currentTimeMillis();
+        }
+        if ( internalContext != null ) {
+            final javax.net.ssl.SSLContext sslContext = internalContext.getSSLContext();
+            flushSessions(context, sslContext.getServerSessionContext(), time);
+            flushSessions(context, sslContext.getClientSessionContext(), time);
+        }
+        return this;
+    }
+
+    private void flushSessions(final ThreadContext context, final SSLSessionContext sessionContext, final long time) {
+        final long timeout = sessionContext.getSessionTimeout() * 1000L; // 0 - no limit
+        if ( timeout == 0 ) return;
+
+        final Enumeration<byte[]> ids = sessionContext.getIds();
+        while ( ids.hasMoreElements() ) {
+            // NOTE: JSSE returns null for (and removes) sessions already timed out
+            final javax.net.ssl.SSLSession session = sessionContext.getSession( ids.nextElement() );
+            if ( isOwnSession(session) && session.getCreationTime() + timeout <= time ) {
+                removeSession(context, session);
+            }
+        }
+    }
+
+    @JRubyMethod(name = "session_remove")
+    public IRubyObject session_remove(final ThreadContext context, final IRubyObject session) {
+        if ( ! ( session instanceof SSLSession ) ) {
+            throw context.runtime.newTypeError("OpenSSL::SSL::Session expected but got " + session.getMetaClass().getName());
+        }
+        final javax.net.ssl.SSLSession sslSession = ((SSLSession) session).sslSession();
+        if ( sslSession == null || ! sslSession.isValid() ) return context.runtime.getFalse();
+        removeSession(context, sslSession);
+        return context.runtime.getTrue();
+    }
+
+    private void removeSession(final ThreadContext context, final javax.net.ssl.SSLSession session) {
+        session.invalidate(); // removes it from the cache
+        final IRubyObject callback = getInstanceVariable("@session_remove_cb");
+        if ( callback != null && ! callback.isNil() ) {
+            final Ruby runtime = context.runtime;
+            callback.callMethod(context, "call", runtime.newArray(this, new SSLSession(runtime, session)));
+        }
+    }
+
+    // called by the SSLSocket (or SSLEngine) once the initial handshake completed
+    void sessionEstablished(final ThreadContext context, final IRubyObject socket,
+        final javax.net.ssl.SSLSession session, final boolean client, final boolean reused) {
+        if ( ! ( client ? isSessionCacheClient() : isSessionCacheServer() ) ) {
+            // a client session stays valid for an explicit session= (SSLSocket did not
+            // bind its engine to the peer's port thus JSSE won't resume it on its own)
+            if ( ! client ) session.invalidate(); // do not keep it in JSSE's session cache
+            return;
+        }
+        if ( reused ) return;
+
+        session.putValue(SESSION_OWNER, sessionOwner);
+
+        final IRubyObject callback = getInstanceVariable("@session_new_cb");
+        if ( callback != null && ! callback.isNil() ) {
+            final Ruby runtime = context.runtime;
+            callback.callMethod(context, "call", runtime.newArray(socket, new SSLSession(runtime, session)));
+        }
+    }
+
+    /**
+     * JSSE does not tell whether a session got resumed, yet a resumed session keeps
+     * its creation time (even when resumed from a stateless ticket - as a new object).
+     * @param handshakeStart the (wall-clock) millis the handshake started at
+     * @return true if the session has been established before (is re-used)
+     */
+    static boolean isSessionReused(final javax.net.ssl.SSLSession session, final long handshakeStart) {
+        return session.getCreationTime() < handshakeStart;
+    }
+
     @JRubyMethod(name = "ssl_version=")
     public IRubyObject set_ssl_version(IRubyObject version) {
         final String versionStr;
@@ -419,12 +883,63 @@ public class SSLContext extends RubyObject {
         return protocolForClient;
     }
 
-    int getLastVerifyResult() {
-        return verifyResult;
+    /**
+     * Peer verification outcome (of the current thread), set by the trust manager
+     * while running the handshake tasks. JSSE contexts might be shared thus the
+     * SSLSocket running the tasks picks it up from here.
+     */
+    static final class Verification {
+
+        private static final ThreadLocal<Verification> current = new ThreadLocal<Verification>() {
+            @Override
+            protected Verification initialValue() { return new Verification(); }
+        };
+
+        int result = -1; // -1 - not verified
+        long nanos; // time spent verifying
+
+        /**
+         * @return a reset verification (of the current thread)
+         */
+        static Verification begin() {
+            final Verification verification = current.get();
+            verification.result = -1; verification.nanos = 0;
+            return verification;
+        }
+
+        static Verification current() {
+            return current.get();
+        }
+
     }
 
-    void setLastVerifyResult(int verifyResult) {
-        this.verifyResult = verifyResult;
+    /**
+     * @return executor for running (handshake) delegated tasks, null if tasks
+     * are to be run on the calling thread (no delegated_task_threads set or
+     * the tasks might call Ruby e.g. the verify_callback or servername_cb)
+     */
+    ExecutorService getTaskExecutor() {
+        final InternalContext internalContext = this.internalContext;
+        if ( internalContext == null || internalContext.hasCallbacks() ) return null;
+        return internalContext.taskExecutor;
+    }
+
+    private static final AtomicInteger taskThreadCount = new AtomicInteger(0);
+
+    private static ExecutorService newTaskExecutor(final int threads) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    final Thread thread = new Thread(task, "jruby-openssl-ssl-task-" + taskThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }
+        );
+        // idle threads die - a context that is no longer used won't hold on to them
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     SSLEngine createDummySSLEngine() throws GeneralSecurityException {
@@ -433,6 +948,125 @@ public class SSLContext extends RubyObject {
         return sslContext.createSSLEngine();
     }
 
+    // protocol -> supported cipher suites (of a dummy engine)
+    private static final Map<String, String[]> supportedCipherSuites = new ConcurrentHashMap<String, String[]>(8);
+
+    private String[] getSupportedCipherSuites() throws GeneralSecurityException {
+        String[] supported = supportedCipherSuites.get(protocol);
+        if ( supported == null ) {
+            supported = createDummySSLEngine().getSupportedCipherSuites();
+            supportedCipherSuites.put(protocol, supported);
+        }
+        return supported;
+    }
+
+    // NOTE: only needed to pass the SSLSocket to the servername_cb (server side)
+    void registerSocket(final SSLEngine engine, final SSLSocket socket) {
+        if ( internalContext.servernameCallback == null ) return;
+        internalContext.sockets.put(engine, new WeakReference<SSLSocket>(socket));
+    }
+
+    /**
+     * Sets up ALPN (if supported by the JDK), advertising protocols for client
+     * engines while servers select the protocol using the alpn_select_cb.
+     */
+    void setupApplicationProtocols(final SSLEngine engine, final boolean client) {
+        if ( setApplicationProtocols == null ) return; // ALPN not supported
+        try {
+            if ( client ) {
+                if ( internalContext.alpnProtocols == null ) return;
+                final SSLParameters params = engine.getSSLParameters();
+                setApplicationProtocols.invoke(params, (Object) internalContext.alpnProtocols);
+                engine.setSSLParameters(params);
+            }
+            else {
+                final IRubyObject callback = internalContext.alpnSelectCallback;
+                if ( callback == null ) return;
+                final Object selector = Proxy.newProxyInstance(
+                    SSLContext.class.getClassLoader(), new Class<?>[] { BiFunction },
+                    new ApplicationProtocolSelector(getRuntime(), callback)
+                );
+                setHandshakeApplicationProtocolSelector.invoke(engine, selector);
+            }
+        }
+        catch (IllegalAccessException e) {
+            debug(getRuntime(), "SSLContext failed setting up ALPN", e);
+        }
+        catch (InvocationTargetException e) {
+            debug(getRuntime(), "SSLContext failed setting up ALPN", e.getTargetException());
+        }
+    }
+
+    /**
+     * @return the negotiated (ALPN) protocol, null if none (or not supported)
+     */
+    static String getApplicationProtocol(final SSLEngine engine) {
+        if ( getApplicationProtocol == null ) return null;
+        try {
+            final String protocol = (String) getApplicationProtocol.invoke(engine);
+            return protocol == null || protocol.length() == 0 ? null : protocol;
+        }
+        catch (IllegalAccessException e) { return null; }
+        catch (InvocationTargetException e) { return null; }
+    }
+
+    private static final Method setApplicationProtocols; // SSLParameters (Java 9)
+    private static final Method setHandshakeApplicationProtocolSelector; // SSLEngine (Java 9)
+    private static final Method getApplicationProtocol; // SSLEngine (Java 9)
+    private static final Class<?> BiFunction;
+
+    static {
+        Method setProtocols = null, setSelector = null, getProtocol = null;
+        Class<?> biFunction = null;
+        try {
+            biFunction = Class.forName("java.util.function.BiFunction");
+            setProtocols = SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+            setSelector = SSLEngine.class.getMethod("setHandshakeApplicationProtocolSelector", biFunction);
+            getProtocol = SSLEngine.class.getMethod("getApplicationProtocol");
+        }
+        catch (ClassNotFoundException e) { setProtocols = setSelector = getProtocol = null; }
+        catch (NoSuchMethodException e) { setProtocols = setSelector = getProtocol = null; }
+        setApplicationProtocols = setProtocols;
+        setHandshakeApplicationProtocolSelector = setSelector;
+        getApplicationProtocol = getProtocol;
+        BiFunction = biFunction;
+    }
+
+    // a BiFunction<SSLEngine, List<String>, String> calling the alpn_select_cb
+    private static class ApplicationProtocolSelector implements InvocationHandler {
+
+        private final Ruby runtime;
+        private final IRubyObject callback;
+
+        ApplicationProtocolSelector(final Ruby runtime, final IRubyObject callback) {
+            this.runtime = runtime; this.callback = callback;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            final String name = method.getName();
+            final int arity = args == null ? 0 : args.length;
+            // java.lang.Object methods (equals, hashCode and toString) are dispatched to the proxy
+            if ( method.getDeclaringClass() == Object.class ) {
+                if ( arity == 1 && name.equals("equals") ) return proxy == args[0];
+                if ( arity == 0 && name.equals("hashCode") ) return System.identityHashCode(proxy);
+                return "ApplicationProtocolSelector[" + callback + "]"; // toString
+            }
+            if ( arity == 2 && name.equals("apply") ) return select( (List<?>) args[1] );
+            // a default method (e.g. BiFunction#andThen) - never used by JSSE
+            throw new UnsupportedOperationException(name);
+        }
+
+        private String select(final List<?> protocols) {
+            final ThreadContext context = runtime.getCurrentContext();
+            final RubyArray list = runtime.newArray( protocols.size() );
+            for ( Object protocol : protocols ) list.append( runtime.newString( (String) protocol ) );
+            final IRubyObject selected = callback.callMethod(context, "call", list);
+            // nil - continue without ALPN (as no protocol was negotiated)
+            return selected.isNil() ? "" : selected.asString().toString();
+        }
+
+    }
+
     // should keep SSLContext as a member for introducin SSLSession. later...
     SSLEngine createSSLEngine(String peerHost, int peerPort) throws NoSuchAlgorithmException, KeyManagementException {
         SSLEngine engine;
@@ -445,13 +1079,13 @@ public class SSLContext extends RubyObject {
         else {
             engine = internalContext.getSSLContext().createSSLEngine(peerHost, peerPort);
         }
-        engine.setEnabledCipherSuites(getCipherSuites(engine));
-        engine.setEnabledProtocols(getEnabledProtocols(engine));
+        engine.setEnabledCipherSuites(internalContext.cipherSuites);
+        engine.setEnabledProtocols(internalContext.enabledProtocols);
         return engine;
     }
 
-    private String[] getCipherSuites(final SSLEngine engine) {
-        List<CipherStrings.Def> ciphs = CipherStrings.getMatchingCiphers(ciphers, engine.getSupportedCipherSuites());
+    private String[] getCipherSuites(final String[] supported) {
+        List<CipherStrings.Def> ciphs = CipherStrings.getMatchingCiphers(ciphers, supported);
         String[] result = new String[ciphs.size()];
         for (int i = 0; i < result.length; i++) {
             result[i] = ciphs.get(i).cipherSuite;
@@ -475,6 +1109,19 @@ public class SSLContext extends RubyObject {
                 if (((options & SSL.OP_NO_TLSv1) != 0) && enabled.equals("TLSv1")) {
                     continue;
                 }
+                if (((options & SSL.OP_NO_TLSv1_1) != 0) && enabled.equals("TLSv1.1")) {
+                    continue;
+                }
+                if (((options & SSL.OP_NO_TLSv1_2) != 0) && enabled.equals("TLSv1.2")) {
+                    continue;
+                }
+                if (((options & SSL.OP_NO_TLSv1_3) != 0) && enabled.equals("TLSv1.3")) {
+                    continue;
+                }
+                final int version = protocolVersion(enabled);
+                if ( ( minVersion != 0 && version < minVersion ) || ( maxVersion != 0 && version > maxVersion ) ) {
+                    continue;
+                }
                 for ( String allowed : engineProtocols ) {
                     if ( allowed.equals(enabled) ) candidates.add(allowed);
                 }
@@ -486,6 +1133,14 @@ public class SSLContext extends RubyObject {
     private String sslVersionString(long bits) {
         StringBuilder sb = new StringBuilder(17);
         boolean first = true;
+        if ( ( bits & CipherStrings.SSL_TLSV1_3 ) != 0 ) {
+            first = false;
+            sb.append("TLSv1.3");
+        }
+        if ( ( bits & CipherStrings.SSL_TLSV1_2 ) != 0 ) {
+            if ( ! first ) sb.append('/'); first = false;
+            sb.append("TLSv1.2");
+        }
         if ( ( bits & CipherStrings.SSL_SSLV3 ) != 0 ) {
             if ( ! first ) sb.append('/'); first = false;
             sb.append("TLSv1/SSLv3");
@@ -553,6 +1208,40 @@ public class SSLContext extends RubyObject {
         return null;
     }
 
+    private static int protocolVersion(final String protocol) {
+        if ( protocol.equals("SSLv2") ) return 0x0002;
+        if ( protocol.equals("SSLv3") ) return SSL.SSL3_VERSION;
+        if ( protocol.equals("TLSv1") ) return SSL.TLS1_VERSION;
+        if ( protocol.equals("TLSv1.1") ) return SSL.TLS1_1_VERSION;
+        if ( protocol.equals("TLSv1.2") ) return SSL.TLS1_2_VERSION;
+        if ( protocol.equals("TLSv1.3") ) return SSL.TLS1_3_VERSION;
+        return 0;
+    }
+
+    @JRubyMethod(name = "min_version=")
+    public IRubyObject set_min_version(final ThreadContext context, final IRubyObject version) {
+        minVersion = toProtocolVersion(context, version);
+        return version;
+    }
+
+    @JRubyMethod(name = "max_version=")
+    public IRubyObject set_max_version(final ThreadContext context, final IRubyObject version) {
+        maxVersion = toProtocolVersion(context, version);
+        return version;
+    }
+
+    // nil, a version number e.g. TLS1_2_VERSION or its name (:TLS1_2)
+    private static int toProtocolVersion(final ThreadContext context, final IRubyObject version) {
+        if ( version.isNil() ) return 0;
+        if ( version instanceof RubyNumeric ) return RubyNumeric.fix2int(version);
+        final String name = version.toString().toUpperCase() + "_VERSION";
+        final IRubyObject value = _SSL(context.runtime).getConstantAt(name);
+        if ( value == null ) {
+            throw context.runtime.newArgumentError("unrecognized version " + version.inspect());
+        }
+        return RubyNumeric.fix2int(value);
+    }
+
     private long getOptions() {
         IRubyObject value = getInstanceVariable("@options");
         if ( value != null && ! value.isNil() ) {
@@ -585,7 +1274,7 @@ public class SSLContext extends RubyObject {
     /**
      * c: SSL_CTX
      */
-    private class InternalContext {
+    private static class InternalContext {
 
         Store store = null;
         int verifyMode = SSL.VERIFY_NONE;
@@ -595,13 +1284,50 @@ public class SSLContext extends RubyObject {
         List<X509AuxCertificate> extraChainCert;
         final List<X509AuxCertificate> clientCert = new ArrayList<X509AuxCertificate>();
         int timeout = 0;
+        int sessionCacheSize = SESSION_CACHE_SIZE_DEFAULT;
+        boolean serverSessionCache = true; // SESSION_CACHE_SERVER
         String protocol = null;
         boolean protocolForServer = true;
         boolean protocolForClient = true;
+        ExecutorService taskExecutor;
+        int verifyDepth = -1; // -1 - from the store
         private javax.net.ssl.SSLContext sslContext;
+        // resolved (once) from the cipher string and (protocol) options
+        // NOTE: shared by (identically set-up) contexts, see sharedContextKey
+        private String[] cipherSuites;
+        private String[] enabledProtocols;
+        private java.security.cert.X509Certificate[] certificateChain;
+
+        // successfully verified (peer) chains, only used with a verify_cache_timeout
+        int verifyCacheTimeout = 0; // seconds
+        private final Map<ByteBuffer, Long> verifiedChains =
+            new LinkedHashMap<ByteBuffer, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+                    return size() > VERIFY_CACHE_SIZE;
+                }
+            };
+
+        String[] alpnProtocols;
+        IRubyObject alpnSelectCallback;
+
+        IRubyObject servernameCallback;
+        // (server) engine -> SSLSocket, for calling the servername_cb
+        final Map<SSLEngine, WeakReference<SSLSocket>> sockets =
+            Collections.synchronizedMap(new WeakHashMap<SSLEngine, WeakReference<SSLSocket>>());
+        // contexts returned from the servername_cb (by id) - referenced from key aliases
+        private final Map<Long, WeakReference<InternalContext>> servernameContexts =
+            new HashMap<Long, WeakReference<InternalContext>>();
+        final long id = internalContextIds.incrementAndGet();
+
+        // Ruby callbacks (possibly) called from delegated tasks
+        boolean hasCallbacks() {
+            return servernameCallback != null || alpnSelectCallback != null ||
+                ( store != null && store.getExtraData(1) != null ); // verify_callback
+        }
 
         void setLastVerifyResultInternal(int lastVerifyResult) {
-            setLastVerifyResult(lastVerifyResult);
+            Verification.current().result = lastVerifyResult;
         }
 
         javax.net.ssl.SSLContext getSSLContext() {
@@ -614,8 +1340,11 @@ public class SSLContext extends RubyObject {
                 sslContext.getClientSessionContext().setSessionTimeout(timeout);
             }
             if (protocolForServer) {
-                sslContext.getServerSessionContext().setSessionTimeout(timeout);
+                sslContext.getServerSessionContext().setSessionTimeout(serverSessionTimeout());
             }
+            setSessionCacheSize(sessionCacheSize);
+            // the chain is fixed once set-up, no need to walk the store on every handshake
+            certificateChain = buildCertificateChain();
             sslContext.init(
                 new KeyManager[] { new KeyManagerImpl(this) },
                 new TrustManager[] { new TrustManagerImpl(this) },
@@ -623,6 +1352,202 @@ public class SSLContext extends RubyObject {
             );
         }
 
+        /**
+         * @return a context set-up the same way, with its own JSSE context (and session cache)
+         */
+        InternalContext copy() throws GeneralSecurityException {
+            final InternalContext copy = new InternalContext();
+            copy.store = store;
+            copy.verifyMode = verifyMode;
+            copy.cert = cert;
+            copy.keyAlgorithm = keyAlgorithm;
+            copy.privateKey = privateKey;
+            copy.extraChainCert = extraChainCert;
+            copy.clientCert.addAll(clientCert);
+            copy.timeout = timeout;
+            copy.sessionCacheSize = sessionCacheSize;
+            copy.serverSessionCache = serverSessionCache;
+            copy.protocol = protocol;
+            copy.protocolForServer = protocolForServer;
+            copy.protocolForClient = protocolForClient;
+            copy.taskExecutor = taskExecutor;
+            copy.verifyDepth = verifyDepth;
+            copy.verifyCacheTimeout = verifyCacheTimeout;
+            copy.alpnProtocols = alpnProtocols;
+            copy.init();
+            copy.cipherSuites = cipherSuites;
+            copy.enabledProtocols = enabledProtocols;
+            return copy;
+        }
+
+        // c: ssl3_output_cert_chain
+        private java.security.cert.X509Certificate[] buildCertificateChain() {
+            ArrayList<java.security.cert.X509Certificate> chain = new ArrayList<java.security.cert.X509Certificate>();
+            if (extraChainCert != null) {
+                chain.addAll(extraChainCert);
+            } else if (cert != null) {
+                StoreContext storeCtx = createStoreContext(null);
+                X509AuxCertificate x = cert;
+                while (true) {
+                    chain.add(x);
+                    if (x.getIssuerDN().equals(x.getSubjectDN())) {
+                        break;
+                    }
+                    try {
+                        Name xn = new Name(x.getIssuerX500Principal());
+                        X509Object[] s_obj = new X509Object[1];
+                        if (storeCtx.getBySubject(X509Utils.X509_LU_X509, xn, s_obj) <= 0) {
+                            break;
+                        }
+                        x = ((Certificate) s_obj[0]).x509;
+                    } catch (Exception e) {
+                        break;
+                    }
+                }
+            }
+            return chain.toArray(new java.security.cert.X509Certificate[chain.size()]);
+        }
+
+        // JSSE does not issue session tickets (TLS 1.3 or RFC 5077) for a lifetime over 7 days,
+        // with the server cache off sessions are also invalidated once established (not resumable)
+        private static final int NO_TICKETS_TIMEOUT = 7 * 24 * 60 * 60 + 1;
+
+        private int serverSessionTimeout() {
+            return serverSessionCache ? timeout : NO_TICKETS_TIMEOUT;
+        }
+
+        void setServerSessionCache(final boolean cache) {
+            this.serverSessionCache = cache;
+            if (protocolForServer) {
+                sslContext.getServerSessionContext().setSessionTimeout(serverSessionTimeout());
+            }
+        }
+
+        void setSessionCacheSize(final int size) {
+            this.sessionCacheSize = size;
+            // NOTE: same as with OpenSSL 0 means no limit
+            if (protocolForClient) {
+                sslContext.getClientSessionContext().setSessionCacheSize(size);
+            }
+            if (protocolForServer) {
+                sslContext.getServerSessionContext().setSessionCacheSize(size);
+            }
+        }
+
+        /**
+         * @return the context to use for the SNI host name requested (from the servername_cb)
+         * NOTE: the callback is called (once) per handshake, the context is kept with the
+         * engine's handshake session as the key manager might ask again (for other key types)
+         */
+        InternalContext getServernameContext(final SSLEngine engine) {
+            final String hostname = getRequestedServerName(engine);
+            if ( hostname == null ) return this;
+            final javax.net.ssl.SSLSession session = getHandshakeSession(engine);
+            if ( session != null ) {
+                final Object context = session.getValue(SERVERNAME_CONTEXT);
+                if ( context instanceof InternalContext ) return (InternalContext) context;
+            }
+            final InternalContext context = callServernameCallback(hostname, engine);
+            if ( session != null ) session.putValue(SERVERNAME_CONTEXT, context);
+            if ( context != this ) {
+                synchronized (servernameContexts) {
+                    final Iterator<WeakReference<InternalContext>> refs = servernameContexts.values().iterator();
+                    while ( refs.hasNext() ) {
+                        if ( refs.next().get() == null ) refs.remove();
+                    }
+                    servernameContexts.put(context.id, new WeakReference<InternalContext>(context));
+                }
+            }
+            return context;
+        }
+
+        /**
+         * @return context for a (previously chosen) server key alias, null if unknown
+         */
+        InternalContext getAliasContext(final String alias) {
+            final int i = alias == null ? -1 : alias.indexOf(SERVERNAME_ALIAS_SEPARATOR);
+            if ( i == -1 ) return this;
+            final WeakReference<InternalContext> ref;
+            try {
+                final Long id = Long.valueOf( alias.substring(i + 1) );
+                synchronized (servernameContexts) {
+                    ref = servernameContexts.get(id);
+                }
+            }
+            catch (NumberFormatException e) {
+                return null;
+            }
+            // the handshake session holds on to the context (while in use)
+            return ref == null ? null : ref.get();
+        }
+
+        private InternalContext callServernameCallback(final String hostname, final SSLEngine engine) {
+            final Ruby runtime = servernameCallback.getRuntime();
+            final ThreadContext context = runtime.getCurrentContext();
+
+            final WeakReference<SSLSocket> socketRef = sockets.get(engine);
+            final SSLSocket socket = socketRef == null ? null : socketRef.get();
+            final IRubyObject[] args = new IRubyObject[] {
+                socket == null ? runtime.getNil() : socket, runtime.newString(hostname)
+            };
+            final IRubyObject ret = servernameCallback.callMethod(context, "call", runtime.newArrayNoCopy(args));
+            if ( ret.isNil() ) return this;
+            if ( ! ( ret instanceof SSLContext ) ) {
+                throw runtime.newTypeError("servername_cb must return an OpenSSL::SSL::SSLContext or nil");
+            }
+            final SSLContext sslContext = (SSLContext) ret;
+            sslContext.setup(context); // no-op if already setup (frozen)
+            if ( socket != null ) socket.callMethod(context, "context=", sslContext);
+            return sslContext.internalContext;
+        }
+
+        /**
+         * @return a key for caching the verification of the given chain, null
+         * if results should not be cached (no timeout or a verify_callback set)
+         */
+        ByteBuffer verifyCacheKey(final String purpose, final X509Certificate[] chain) {
+            if ( verifyCacheTimeout <= 0 || store == null ) return null;
+            if ( store.getExtraData(1) != null ) return null; // verify_callback
+            try {
+                final MessageDigest digest = SecurityHelper.getMessageDigest("SHA-256");
+                for ( X509Certificate cert : chain ) digest.update( cert.getEncoded() );
+                digest.update( purpose.getBytes("UTF-8") );
+                final ByteBuffer params = ByteBuffer.allocate(16);
+                params.putInt( store.getGeneration() );
+                params.putLong( store.verifyParameter.flags );
+                params.putInt( verifyDepth );
+                digest.update( params.array() );
+                return ByteBuffer.wrap( digest.digest() );
+            }
+            catch (GeneralSecurityException e) {
+                return null; // do not cache
+            }
+            catch (java.io.UnsupportedEncodingException e) {
+                return null; // won't happen
+            }
+        }
+
+        boolean isVerified(final ByteBuffer cacheKey) {
+            final Long expires;
+            synchronized (verifiedChains) {
+                expires = verifiedChains.get(cacheKey);
+                if ( expires == null ) return false;
+                if ( expires > System.currentTimeMillis() ) return true;
+                verifiedChains.remove(cacheKey);
+            }
+            return false;
+        }
+
+        void setVerified(final ByteBuffer cacheKey, final X509Certificate[] chain) {
+            long expires = System.currentTimeMillis() + verifyCacheTimeout * 1000L;
+            for ( X509Certificate cert : chain ) {
+                expires = Math.min(expires, cert.getNotAfter().getTime());
+            }
+            synchronized (verifiedChains) {
+                verifiedChains.put(cacheKey, expires);
+            }
+        }
+
         // part of ssl_verify_cert_chain
         StoreContext createStoreContext(final String purpose) {
             if ( store == null ) return null;
@@ -637,10 +1562,75 @@ public class SSLContext extends RubyObject {
                 storeContext.setDefault(purpose);
             }
             storeContext.verifyParameter.inherit(store.verifyParameter);
+            if ( verifyDepth != -1 ) storeContext.setDepth(verifyDepth);
             return storeContext;
         }
     }
 
+    private static final int VERIFY_CACHE_SIZE = Integer.getInteger("jruby.openssl.ssl.verify_cache_size", 1024);
+    private static final char SERVERNAME_ALIAS_SEPARATOR = '@';
+    private static final String SESSION_OWNER = "org.jruby.ext.openssl.session_owner";
+    private static final String SERVERNAME_CONTEXT = "org.jruby.ext.openssl.servername_context";
+    private static final AtomicLong internalContextIds = new AtomicLong(0);
+
+    private static final Method getHandshakeSession; // SSLEngine (Java 7)
+    private static final Method getRequestedServerNames; // ExtendedSSLSession (Java 8)
+    private static final Method getAsciiName; // SNIHostName (Java 8)
+    private static final Class<?> SNIHostName;
+
+    static {
+        Method handshakeSession = null, requestedServerNames = null, asciiName = null;
+        Class<?> hostName = null;
+        try {
+            handshakeSession = SSLEngine.class.getMethod("getHandshakeSession");
+        }
+        catch (NoSuchMethodException e) { /* Java 6 */ }
+        try {
+            requestedServerNames = Class.forName("javax.net.ssl.ExtendedSSLSession").getMethod("getRequestedServerNames");
+            hostName = Class.forName("javax.net.ssl.SNIHostName");
+            asciiName = hostName.getMethod("getAsciiName");
+        }
+        catch (ClassNotFoundException e) { /* no SNI support on Java < 8 */ }
+        catch (NoSuchMethodException e) { /* no SNI support on Java < 8 */ }
+        getHandshakeSession = handshakeSession;
+        getRequestedServerNames = requestedServerNames;
+        getAsciiName = asciiName;
+        SNIHostName = hostName;
+    }
+
+    /**
+     * @return the session being handshaked (Java 7+) or null
+     */
+    static javax.net.ssl.SSLSession getHandshakeSession(final SSLEngine engine) {
+        if ( getHandshakeSession == null ) return null;
+        try {
+            return (javax.net.ssl.SSLSession) getHandshakeSession.invoke(engine);
+        }
+        catch (IllegalAccessException e) { return null; }
+        catch (InvocationTargetException e) { return null; }
+    }
+
+    /**
+     * @return the host name (SNI) requested by the client or null
+     */
+    static String getRequestedServerName(final SSLEngine engine) {
+        if ( getAsciiName == null ) return null;
+        try {
+            final Object session = getHandshakeSession(engine);
+            if ( ! getRequestedServerNames.getDeclaringClass().isInstance(session) ) return null;
+            final List<?> serverNames = (List<?>) getRequestedServerNames.invoke(session);
+            if ( serverNames == null ) return null;
+            for ( Object serverName : serverNames ) {
+                if ( SNIHostName.isInstance(serverName) ) {
+                    return (String) getAsciiName.invoke(serverName);
+                }
+            }
+        }
+        catch (IllegalAccessException e) { return null; }
+        catch (InvocationTargetException e) { return null; }
+        return null;
+    }
+
     private static class KeyManagerImpl extends X509ExtendedKeyManager {
 
         final InternalContext internalContext;
@@ -668,10 +1658,20 @@ public class SSLContext extends RubyObject {
 
         @Override
         public String chooseEngineServerAlias(String keyType, java.security.Principal[] issuers, javax.net.ssl.SSLEngine engine) {
-            if (internalContext == null || internalContext.privateKey == null) {
+            if (internalContext == null) {
+                return null;
+            }
+            InternalContext internalContext = this.internalContext;
+            if (internalContext.servernameCallback != null && engine != null) {
+                internalContext = internalContext.getServernameContext(engine);
+            }
+            if (internalContext.privateKey == null) {
                 return null;
             }
             if (keyType.equalsIgnoreCase(internalContext.keyAlgorithm)) {
+                if (internalContext != this.internalContext) {
+                    return keyType + SERVERNAME_ALIAS_SEPARATOR + internalContext.id;
+                }
                 return keyType;
             }
             return null;
@@ -689,33 +1689,14 @@ public class SSLContext extends RubyObject {
 
         @Override // c: ssl3_output_cert_chain
         public java.security.cert.X509Certificate[] getCertificateChain(String alias) {
-            if (internalContext == null) {
+            if (this.internalContext == null) {
                 return null;
             }
-            ArrayList<java.security.cert.X509Certificate> chain = new ArrayList<java.security.cert.X509Certificate>();
-            if (internalContext.extraChainCert != null) {
-                chain.addAll(internalContext.extraChainCert);
-            } else if (internalContext.cert != null) {
-                StoreContext storeCtx = internalContext.createStoreContext(null);
-                X509AuxCertificate x = internalContext.cert;
-                while (true) {
-                    chain.add(x);
-                    if (x.getIssuerDN().equals(x.getSubjectDN())) {
-                        break;
-                    }
-                    try {
-                        Name xn = new Name(x.getIssuerX500Principal());
-                        X509Object[] s_obj = new X509Object[1];
-                        if (storeCtx.getBySubject(X509Utils.X509_LU_X509, xn, s_obj) <= 0) {
-                            break;
-                        }
-                        x = ((Certificate) s_obj[0]).x509;
-                    } catch (Exception e) {
-                        break;
-                    }
-                }
+            final InternalContext internalContext = this.internalContext.getAliasContext(alias);
+            if (internalContext == null) {
+                return null; // never mix the default key with another context's chain
             }
-            return chain.toArray(new java.security.cert.X509Certificate[0]);
+            return internalContext.certificateChain.clone();
         }
 
         @Override
@@ -725,10 +1706,11 @@ public class SSLContext extends RubyObject {
 
         @Override
         public java.security.PrivateKey getPrivateKey(String alias) {
-            if (internalContext == null || internalContext.privateKey == null) {
+            if (internalContext == null) {
                 return null;
             }
-            return internalContext.privateKey;
+            final InternalContext internalContext = this.internalContext.getAliasContext(alias);
+            return internalContext == null ? null : internalContext.privateKey;
         }
 
         @Override
@@ -775,13 +1757,13 @@ public class SSLContext extends RubyObject {
             if (chain != null && chain.length > 0) {
                 if ((internalContext.verifyMode & SSL.VERIFY_PEER) != 0) {
                     // verify_peer
-                    final StoreContext storeContext = internalContext.createStoreContext(purpose);
-                    if ( storeContext == null ) {
-                        throw new CertificateException("couldn't initialize store");
+                    final long start = System.nanoTime();
+                    try {
+                        verifyPeer(purpose, chain);
+                    }
+                    finally {
+                        Verification.current().nanos += System.nanoTime() - start;
                     }
-                    storeContext.setCertificate(chain[0]);
-                    storeContext.setChain(chain);
-                    verifyChain(storeContext);
                 }
             } else {
                 if ((internalContext.verifyMode & SSL.VERIFY_FAIL_IF_NO_PEER_CERT) != 0) {
@@ -791,6 +1773,22 @@ public class SSLContext extends RubyObject {
             }
         }
 
+        private void verifyPeer(String purpose, X509Certificate[] chain) throws CertificateException {
+            final ByteBuffer cacheKey = internalContext.verifyCacheKey(purpose, chain);
+            if ( cacheKey != null && internalContext.isVerified(cacheKey) ) {
+                internalContext.setLastVerifyResultInternal(X509Utils.V_OK);
+                return;
+            }
+            final StoreContext storeContext = internalContext.createStoreContext(purpose);
+            if ( storeContext == null ) {
+                throw new CertificateException("couldn't initialize store");
+            }
+            storeContext.setCertificate(chain[0]);
+            storeContext.setChain(chain);
+            verifyChain(storeContext);
+            if ( cacheKey != null ) internalContext.setVerified(cacheKey, chain);
+        }
+
         private void verifyChain(final StoreContext storeContext) throws CertificateException {
             try {
                 int ok = storeContext.verifyCertificate();
@@ -0,0 +1,478 @@
+/***** BEGIN LICENSE BLOCK *****
+ * Version: EPL 1.0/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Eclipse Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either of the GNU General Public License Version 2 or later (the "GPL"),
+ * or the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the EPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the EPL, the GPL or the LGPL.
+ ***** END LICENSE BLOCK *****/
+package org.jruby.ext.openssl;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import org.jruby.Ruby;
+import org.jruby.RubyClass;
+import org.jruby.RubyModule;
+import org.jruby.RubyNumeric;
+import org.jruby.RubyObject;
+import org.jruby.RubyString;
+import org.jruby.anno.JRubyMethod;
+import org.jruby.runtime.Arity;
+import org.jruby.runtime.ObjectAllocator;
+import org.jruby.runtime.ThreadContext;
+import org.jruby.runtime.Visibility;
+import org.jruby.runtime.builtin.IRubyObject;
+import org.jruby.util.ByteList;
+
+import org.jruby.ext.openssl.x509store.X509Utils;
+
+import static org.jruby.ext.openssl.SSL.newSSLError;
+
+/**
+ * OpenSSL::SSL::SSLEngine - TLS over memory buffers (a "memory BIO").
+ *
+ * Does no I/O on its own: network data received is fed in, network data to
+ * be sent is extracted, while application data is read and written as with
+ * a SSLSocket. Meant for event-loops (reactors) that own the I/O:
+ *
+ * <pre>
+ *   engine = OpenSSL::SSL::SSLEngine.new(ctx, :client, 'example.com', 443)
+ *   engine.handshake # false - needs (more) input
+ *   io.write engine.extract # ClientHello
+ *   engine.feed io.read_nonblock(16384)
+ *   ...
+ *   engine.write 'GET / HTTP/1.0\r\n\r\n'; io.write engine.extract
+ *   engine.feed io.read_nonblock(16384); engine.read # => "HTTP/1.0 200 OK ..."
+ * </pre>
+ */
+public class SSLMemoryEngine extends RubyObject {
+
+    private static final long serialVersionUID = 5433281263562727153L;
+
+    private static ObjectAllocator ENGINE_ALLOCATOR = new ObjectAllocator() {
+        public IRubyObject allocate(Ruby runtime, RubyClass klass) {
+            return new SSLMemoryEngine(runtime, klass);
+        }
+    };
+
+    public static void createSSLEngine(final Ruby runtime, final RubyModule _SSL) { // OpenSSL::SSL
+        RubyClass _SSLEngine = _SSL.defineClassUnder("SSLEngine", runtime.getObject(), ENGINE_ALLOCATOR);
+        _SSLEngine.defineAnnotatedMethods(SSLMemoryEngine.class);
+    }
+
+    public SSLMemoryEngine(Ruby runtime, RubyClass type) {
+        super(runtime, type);
+    }
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private SSLContext sslContext;
+    private SSLEngine engine;
+    private SSLEngineResult.HandshakeStatus hsStatus;
+
+    // NOTE: all buffers are kept in "fill" mode, grown up to (a few) records :
+    // (network) input is not consumed while unwrapped data is not read, nor is
+    // application data written (wrapped) while output is not extracted
+    private static final int MAX_RECORDS = 4;
+    private ByteBuffer netIn; // fed (network) data
+    private ByteBuffer netOut; // wrapped data to be extracted
+    private ByteBuffer appIn; // unwrapped application data
+    private int appBufferSize;
+    private int packetBufferSize;
+
+    private boolean initialHandshake;
+    private boolean sessionReused;
+    private long handshakeStart; // millis (to tell a re-used session)
+    private long handshakeStartNanos;
+    private int verifyResult = X509Utils.V_OK;
+
+    /**
+     * SSLEngine.new(ctx, mode = :client, hostname = nil, port = nil)
+     * @note the host-name (and port) are used for SNI and client session resumption
+     */
+    @JRubyMethod(rest = true, visibility = Visibility.PRIVATE)
+    public IRubyObject initialize(final ThreadContext context, final IRubyObject[] args) {
+        final Ruby runtime = context.runtime;
+        Arity.checkArgumentCount(runtime, args, 1, 4);
+
+        if ( ! ( args[0] instanceof SSLContext ) ) {
+            throw runtime.newTypeError("OpenSSL::SSL::SSLContext expected but got " + args[0].getMetaClass().getName());
+        }
+        sslContext = (SSLContext) args[0];
+        sslContext.setup(context); // no-op if already setup (frozen)
+
+        final boolean client;
+        final String mode = args.length > 1 && ! args[1].isNil() ? args[1].toString() : "client";
+        if ( mode.equals("client") ) client = true;
+        else if ( mode.equals("server") ) client = false;
+        else throw runtime.newArgumentError("unknown mode `" + mode + "' (expected :client or :server)");
+
+        final String peerHost = args.length > 2 && ! args[2].isNil() ? args[2].toString() : null;
+        final int peerPort = args.length > 3 && ! args[3].isNil() ? RubyNumeric.fix2int(args[3]) : -1;
+
+        if ( client ? ! sslContext.isProtocolForClient() : ! sslContext.isProtocolForServer() ) {
+            throw newSSLError(runtime, "called a function you should not call");
+        }
+
+        try {
+            engine = sslContext.createSSLEngine(peerHost, peerPort);
+            engine.setUseClientMode(client);
+            if ( ! client ) {
+                final IRubyObject verify_mode = sslContext.callMethod(context, "verify_mode");
+                if ( ! verify_mode.isNil() ) {
+                    final int vfy = RubyNumeric.fix2int(verify_mode);
+                    if ( ( vfy & SSL.VERIFY_PEER ) != 0 ) engine.setWantClientAuth(true);
+                    if ( ( vfy & SSL.VERIFY_FAIL_IF_NO_PEER_CERT ) != 0 ) engine.setNeedClientAuth(true);
+                }
+            }
+            sslContext.setupApplicationProtocols(engine, client);
+
+            final javax.net.ssl.SSLSession session = engine.getSession();
+            appBufferSize = session.getApplicationBufferSize();
+            packetBufferSize = session.getPacketBufferSize();
+            netIn = ByteBuffer.allocate(packetBufferSize);
+            netOut = ByteBuffer.allocate(packetBufferSize);
+            appIn = ByteBuffer.allocate(appBufferSize);
+
+            handshakeStart = System.currentTimeMillis();
+            handshakeStartNanos = System.nanoTime();
+            sslContext.getStatistics().handshakeStarted(client);
+            try {
+                engine.beginHandshake();
+            }
+            catch (SSLException e) {
+                sslContext.getStatistics().handshakeFailed(); throw e;
+            }
+            catch (RuntimeException e) {
+                sslContext.getStatistics().handshakeFailed(); throw e;
+            }
+            hsStatus = engine.getHandshakeStatus();
+            initialHandshake = true;
+        }
+        catch (GeneralSecurityException e) {
+            throw newSSLError(runtime, e);
+        }
+        catch (SSLException e) {
+            throw newSSLError(runtime, e);
+        }
+        return this;
+    }
+
+    @JRubyMethod
+    public IRubyObject context(final ThreadContext context) {
+        return sslContext == null ? context.runtime.getNil() : sslContext;
+    }
+
+    /**
+     * Feeds (network) data received from the peer.
+     * @return bytes consumed, less than given (possibly 0) while fed data is
+     * buffered up to the limit - (application) data needs to be read first
+     */
+    @JRubyMethod
+    public IRubyObject feed(final ThreadContext context, final IRubyObject data) {
+        final ByteList bytes = data.asString().getByteList();
+        if ( netIn.remaining() < bytes.getRealSize() ) {
+            process(context); // unwrap what has been fed so far
+            final int limit = MAX_RECORDS * packetBufferSize;
+            if ( netIn.remaining() < bytes.getRealSize() && netIn.capacity() < limit ) {
+                netIn = grow(netIn, Math.min(bytes.getRealSize() - netIn.remaining(), limit - netIn.capacity()));
+            }
+        }
+        final int length = Math.min(bytes.getRealSize(), netIn.remaining());
+        netIn.put(bytes.getUnsafeBytes(), bytes.getBegin(), length);
+        sslContext.getStatistics().read(length);
+        return context.runtime.newFixnum(length);
+    }
+
+    /**
+     * Extracts (network) data to be sent to the peer.
+     * @return a string, empty if there's nothing to send
+     */
+    @JRubyMethod(optional = 1)
+    public IRubyObject extract(final ThreadContext context, final IRubyObject[] args) {
+        final RubyString data = drain(context, netOut, args.length > 0 ? args[0] : null);
+        sslContext.getStatistics().written(data.size());
+        return data;
+    }
+
+    /**
+     * Advances the handshake (using the data fed so far).
+     * @return true once the handshake completed, false if more input is needed
+     * (output to be extracted might be pending)
+     */
+    @JRubyMethod
+    public IRubyObject handshake(final ThreadContext context) {
+        process(context);
+        return context.runtime.newBoolean( ! initialHandshake );
+    }
+
+    @JRubyMethod(name = "handshake_completed?")
+    public IRubyObject handshake_completed_p(final ThreadContext context) {
+        return context.runtime.newBoolean( ! initialHandshake );
+    }
+
+    /**
+     * Reads (decrypted) application data.
+     * @return a string (empty when more input is needed), nil at EOF
+     */
+    @JRubyMethod(optional = 1)
+    public IRubyObject read(final ThreadContext context, final IRubyObject[] args) {
+        process(context);
+        if ( appIn.position() == 0 && engine.isInboundDone() ) return context.runtime.getNil();
+        return drain(context, appIn, args.length > 0 ? args[0] : null);
+    }
+
+    /**
+     * Writes (encrypts) application data, call #extract to get it.
+     * @return bytes consumed, 0 while the handshake did not complete - less than
+     * given (possibly 0) while output is pending up to the limit (needs extracting)
+     */
+    @JRubyMethod
+    public IRubyObject write(final ThreadContext context, final IRubyObject data) {
+        final Ruby runtime = context.runtime;
+        process(context);
+        if ( initialHandshake ) return runtime.newFixnum(0);
+
+        final ByteList bytes = data.asString().getByteList();
+        final ByteBuffer src = ByteBuffer.wrap(bytes.getUnsafeBytes(), bytes.getBegin(), bytes.getRealSize());
+        try {
+            while ( src.hasRemaining() ) {
+                final SSLEngineResult res = wrap(src);
+                if ( res.getStatus() == SSLEngineResult.Status.CLOSED ) {
+                    throw newSSLError(runtime, "closed SSL engine");
+                }
+                if ( res.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW ) break; // a short write
+            }
+        }
+        catch (SSLException e) {
+            throw newSSLError(runtime, e);
+        }
+        process(context); // e.g. a renegotiation
+        return runtime.newFixnum( src.position() - bytes.getBegin() );
+    }
+
+    /**
+     * Closes (the outbound side of) the connection, the close_notify alert
+     * is to be extracted (and sent to the peer).
+     */
+    @JRubyMethod
+    public IRubyObject close(final ThreadContext context) {
+        engine.closeOutbound();
+        try {
+            while ( ! engine.isOutboundDone() ) {
+                final SSLEngineResult res = wrap(EMPTY);
+                if ( res.bytesProduced() == 0 ) break;
+            }
+        }
+        catch (SSLException e) {
+            OpenSSLReal.debug(context.runtime, "SSLEngine#close", e);
+        }
+        return this;
+    }
+
+    @JRubyMethod(name = "closed?")
+    public IRubyObject closed_p(final ThreadContext context) {
+        return context.runtime.newBoolean( engine.isOutboundDone() );
+    }
+
+    @JRubyMethod(name = "eof?")
+    public IRubyObject eof_p(final ThreadContext context) {
+        return context.runtime.newBoolean( appIn.position() == 0 && engine.isInboundDone() );
+    }
+
+    /**
+     * @return decrypted bytes, that could be read (without feeding)
+     */
+    @JRubyMethod
+    public IRubyObject pending(final ThreadContext context) {
+        return context.runtime.newFixnum( appIn.position() );
+    }
+
+    /**
+     * @return bytes to be extracted (and sent to the peer)
+     */
+    @JRubyMethod
+    public IRubyObject pending_output(final ThreadContext context) {
+        return context.runtime.newFixnum( netOut.position() );
+    }
+
+    @JRubyMethod
+    public IRubyObject verify_result(final ThreadContext context) {
+        return context.runtime.newFixnum(verifyResult);
+    }
+
+    @JRubyMethod
+    public IRubyObject peer_cert(final ThreadContext context) {
+        final Ruby runtime = context.runtime;
+        try {
+            Certificate[] cert = engine.getSession().getPeerCertificates();
+            if ( cert.length > 0 ) {
+                return X509Cert.wrap(runtime, cert[0]);
+            }
+        }
+        catch (CertificateEncodingException e) {
+            throw X509Cert.newCertificateError(runtime, e);
+        }
+        catch (SSLPeerUnverifiedException e) { /* no peer certificate */ }
+        return runtime.getNil();
+    }
+
+    @JRubyMethod
+    public IRubyObject cipher(final ThreadContext context) {
+        if ( initialHandshake ) return context.runtime.getNil();
+        return context.runtime.newString( engine.getSession().getCipherSuite() );
+    }
+
+    @JRubyMethod
+    public IRubyObject alpn_protocol(final ThreadContext context) {
+        final String protocol = SSLContext.getApplicationProtocol(engine);
+        return protocol == null ? context.runtime.getNil() : context.runtime.newString(protocol);
+    }
+
+    @JRubyMethod
+    public IRubyObject session(final ThreadContext context) {
+        if ( initialHandshake ) return context.runtime.getNil();
+        final javax.net.ssl.SSLSession session = engine.getSession();
+        if ( ! session.isValid() ) return context.runtime.getNil();
+        return new SSLSession(context.runtime, session);
+    }
+
+    @JRubyMethod(name = "session_reused?")
+    public IRubyObject session_reused_p(final ThreadContext context) {
+        return context.runtime.newBoolean(sessionReused);
+    }
+
+    // runs (handshake) tasks, wraps and unwraps (what has been fed) as long as possible
+    private void process(final ThreadContext context) {
+        try {
+            while ( true ) {
+                if ( hsStatus == SSLEngineResult.HandshakeStatus.NEED_TASK ) {
+                    final int result = SSLSocket.runTasks(engine, sslContext.getStatistics());
+                    if ( result != -1 ) verifyResult = result;
+                    hsStatus = engine.getHandshakeStatus();
+                }
+                else if ( hsStatus == SSLEngineResult.HandshakeStatus.NEED_WRAP ) {
+                    final SSLEngineResult res = wrap(EMPTY);
+                    if ( res.getStatus() == SSLEngineResult.Status.CLOSED && res.bytesProduced() == 0 ) return;
+                    if ( res.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW ) return; // needs extracting
+                }
+                else { // NEED_UNWRAP (NEED_UNWRAP_AGAIN), FINISHED or NOT_HANDSHAKING
+                    if ( hsStatus == SSLEngineResult.HandshakeStatus.FINISHED ||
+                         hsStatus == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING ) {
+                        if ( initialHandshake ) finishInitialHandshake(context);
+                        if ( netIn.position() == 0 ) return; // nothing to unwrap
+                    }
+                    if ( ! unwrap() ) return;
+                }
+            }
+        }
+        catch (SSLException e) {
+            if ( initialHandshake ) sslContext.getStatistics().handshakeFailed();
+            throw newSSLError(context.runtime, e);
+        }
+        catch (RuntimeException e) { // e.g. raised from a Ruby callback
+            if ( initialHandshake ) sslContext.getStatistics().handshakeFailed();
+            throw e;
+        }
+    }
+
+    private void finishInitialHandshake(final ThreadContext context) {
+        initialHandshake = false;
+        final javax.net.ssl.SSLSession session = engine.getSession();
+        final boolean client = engine.getUseClientMode();
+        final boolean reused = sessionReused = SSLContext.isSessionReused(session, handshakeStart);
+        sslContext.getStatistics().handshakeFinished(client, reused, System.nanoTime() - handshakeStartNanos);
+        // NOTE: there's no socket to pass to the session_new_cb
+        sslContext.sessionEstablished(context, context.nil, session, client, reused);
+    }
+
+    /**
+     * @return false if nothing could be unwrapped (more data needs to be fed)
+     */
+    private boolean unwrap() throws SSLException {
+        netIn.flip();
+        try {
+            while ( true ) {
+                final SSLEngineResult res = engine.unwrap(netIn, appIn);
+                hsStatus = res.getHandshakeStatus();
+                switch ( res.getStatus() ) {
+                    case BUFFER_OVERFLOW :
+                        if ( appIn.capacity() >= MAX_RECORDS * appBufferSize ) return false; // needs reading
+                        appIn = grow(appIn, appBufferSize); continue;
+                    case BUFFER_UNDERFLOW :
+                        return false;
+                    default : // OK or CLOSED
+                        return res.bytesConsumed() > 0 || res.bytesProduced() > 0;
+                }
+            }
+        }
+        finally {
+            netIn.compact();
+        }
+    }
+
+    /**
+     * @return the result, with a BUFFER_OVERFLOW status once output is pending up to the limit
+     */
+    private SSLEngineResult wrap(final ByteBuffer src) throws SSLException {
+        while ( true ) {
+            final SSLEngineResult res = engine.wrap(src, netOut);
+            hsStatus = res.getHandshakeStatus();
+            if ( res.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW &&
+                 netOut.capacity() < MAX_RECORDS * packetBufferSize ) {
+                netOut = grow(netOut, packetBufferSize); continue;
+            }
+            return res;
+        }
+    }
+
+    // returns (and removes) up to max bytes from the buffer
+    private static RubyString drain(final ThreadContext context, final ByteBuffer buffer, final IRubyObject max) {
+        int length = buffer.position();
+        if ( max != null && ! max.isNil() ) {
+            final int maxlen = RubyNumeric.fix2int(max);
+            if ( maxlen < 0 ) throw context.runtime.newArgumentError("negative length " + maxlen + " given");
+            length = Math.min(length, maxlen);
+        }
+        if ( length == 0 ) return RubyString.newEmptyString(context.runtime);
+        final byte[] bytes = new byte[length];
+        buffer.flip();
+        buffer.get(bytes);
+        buffer.compact();
+        return RubyString.newString(context.runtime, new ByteList(bytes, false));
+    }
+
+    // a bigger copy of a buffer (in "fill" mode)
+    private static ByteBuffer grow(final ByteBuffer buffer, final int more) {
+        final ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() + more);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+}// SSLEngine
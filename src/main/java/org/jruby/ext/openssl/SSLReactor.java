@@ -0,0 +1,476 @@
+/***** BEGIN LICENSE BLOCK *****
+ * Version: EPL 1.0/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Eclipse Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either of the GNU General Public License Version 2 or later (the "GPL"),
+ * or the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the EPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the EPL, the GPL or the LGPL.
+ ***** END LICENSE BLOCK *****/
+package org.jruby.ext.openssl;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jruby.Ruby;
+import org.jruby.RubyArray;
+import org.jruby.RubyClass;
+import org.jruby.RubyModule;
+import org.jruby.RubyNumeric;
+import org.jruby.RubyObject;
+import org.jruby.RubyThread;
+import org.jruby.anno.JRubyMethod;
+import org.jruby.exceptions.RaiseException;
+import org.jruby.runtime.Block;
+import org.jruby.runtime.ObjectAllocator;
+import org.jruby.runtime.ThreadContext;
+import org.jruby.runtime.Visibility;
+import org.jruby.runtime.builtin.IRubyObject;
+
+import static org.jruby.ext.openssl.OpenSSLReal.debug;
+
+/**
+ * OpenSSL::SSL::Reactor - multiplexes (non-blocking) SSL sockets using a
+ * single selector (thread), instead of a selector per socket wait.
+ *
+ * Sockets are registered for an event (one-shot) :
+ * <ul>
+ * <li>:read - readable (or already having decrypted/buffered data)</li>
+ * <li>:write - writable</li>
+ * <li>:connect / :accept - the handshake is driven (by #poll) until done</li>
+ * </ul>
+ * Ready events are handed out by #poll (from any number of Ruby threads)
+ * either to the block given on registration or returned as
+ * <code>[socket, event]</code> pairs, a failed handshake's event is the error.
+ */
+public class SSLReactor extends RubyObject {
+
+    private static final long serialVersionUID = -2946813741287931253L;
+
+    private static ObjectAllocator REACTOR_ALLOCATOR = new ObjectAllocator() {
+        public IRubyObject allocate(Ruby runtime, RubyClass klass) {
+            return new SSLReactor(runtime, klass);
+        }
+    };
+
+    public static void createReactor(final Ruby runtime, final RubyModule _SSL) { // OpenSSL::SSL
+        RubyClass _Reactor = _SSL.defineClassUnder("Reactor", runtime.getObject(), REACTOR_ALLOCATOR);
+        _Reactor.defineAnnotatedMethods(SSLReactor.class);
+    }
+
+    public SSLReactor(Ruby runtime, RubyClass type) {
+        super(runtime, type);
+    }
+
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+    private static final int READ = 0, WRITE = 1, CONNECT = 2, ACCEPT = 3;
+    private static final String[] EVENTS = { "read", "write", "connect", "accept" };
+
+    private SelectLoop loop;
+    private LinkedBlockingQueue<Interest> ready; // loop.ready
+    private AtomicInteger pending; // loop.pending
+
+    private static final Interest CLOSED = new Interest(null, null, -1, null);
+
+    private static final class Interest {
+
+        final SSLSocket socket;
+        final SelectableChannel channel;
+        final int event;
+        final IRubyObject callback;
+        int ops; // SelectionKey.OP_READ or OP_WRITE, 0 to cancel
+
+        Interest(SSLSocket socket, SelectableChannel channel, int event, IRubyObject callback) {
+            this.socket = socket; this.channel = channel;
+            this.event = event; this.callback = callback;
+            this.ops = event == WRITE ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        }
+
+    }
+
+    /**
+     * @note a reactor should be closed once no longer used, although its (select)
+     * thread also stops after the reactor got garbage collected (not closed)
+     */
+    @JRubyMethod(visibility = Visibility.PRIVATE)
+    public IRubyObject initialize(final ThreadContext context) {
+        final Selector selector;
+        try {
+            selector = Selector.open();
+        }
+        catch (IOException e) {
+            throw context.runtime.newIOErrorFromException(e);
+        }
+        loop = new SelectLoop(this, selector);
+        ready = loop.ready; pending = loop.pending;
+        final Thread thread = new Thread(loop, "OpenSSL::SSL::Reactor-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * reactor.register(ssl_socket, event = :read) { |ssl_socket, event| ... }
+     * @note registration is one-shot, re-register to wait again - a registration
+     * replaces the socket's pending one waiting for the same readiness (:read,
+     * :connect and :accept might wait for the socket to get readable)
+     */
+    @JRubyMethod(required = 1, optional = 1)
+    public IRubyObject register(final ThreadContext context, final IRubyObject[] args, final Block block) {
+        final Ruby runtime = context.runtime;
+        checkClosed(runtime);
+
+        if ( ! ( args[0] instanceof SSLSocket ) ) {
+            throw runtime.newTypeError("OpenSSL::SSL::SSLSocket expected but got " + args[0].getMetaClass().getName());
+        }
+        final SSLSocket socket = (SSLSocket) args[0];
+        final SelectableChannel channel = socket.selectableChannel();
+        if ( channel == null ) throw runtime.newArgumentError("socket is not selectable");
+
+        final String name = args.length > 1 ? args[1].toString() : "read";
+        int event = -1;
+        for ( int i = 0; i < EVENTS.length; i++ ) {
+            if ( EVENTS[i].equals(name) ) { event = i; break; }
+        }
+        if ( event == -1 ) throw runtime.newArgumentError("unknown event `" + name + "'");
+
+        final IRubyObject callback = block.isGiven() ? runtime.newProc(Block.Type.PROC, block) : runtime.getNil();
+        final Interest interest = new Interest(socket, channel, event, callback);
+        pending.incrementAndGet();
+
+        boolean selectable = true;
+        try {
+            socket.selectingIO(); // non-blocking (on the calling thread)
+        }
+        catch (IOException e) { // e.g. ClosedChannelException
+            selectable = false;
+        }
+
+        // no need to select when data is already buffered (or to start a handshake)
+        // a closed socket's event is handed out right away - the attempt will fail
+        if ( ! selectable || event >= CONNECT || ( event == READ && socket.hasBufferedInput() ) ) {
+            ready.offer(interest);
+        }
+        else {
+            submit(interest);
+        }
+        return this;
+    }
+
+    /**
+     * Cancels all (not yet ready) registrations of the socket.
+     */
+    @JRubyMethod
+    public IRubyObject deregister(final ThreadContext context, final IRubyObject socket) {
+        if ( ! ( socket instanceof SSLSocket ) ) return context.runtime.getNil();
+        final SelectableChannel channel = ((SSLSocket) socket).selectableChannel();
+        if ( channel != null && ! isClosed() ) {
+            final Interest cancel = new Interest((SSLSocket) socket, channel, READ, null);
+            cancel.ops = 0; submit(cancel);
+        }
+        return socket;
+    }
+
+    /**
+     * reactor.poll(timeout = nil)
+     * Waits (up to timeout seconds, forever if nil) for ready events.
+     * @return [socket, event] pairs for events not handled by a (registration) block
+     */
+    @JRubyMethod(optional = 1)
+    public IRubyObject poll(final ThreadContext context, final IRubyObject[] args) {
+        final Ruby runtime = context.runtime;
+        final long timeout = args.length > 0 && ! args[0].isNil() ?
+                (long) ( RubyNumeric.num2dbl(args[0]) * 1000 ) : -1;
+        final long deadline = System.currentTimeMillis() + timeout;
+
+        final RubyArray events = runtime.newArray();
+        int delivered = 0;
+        while ( true ) {
+            Interest interest;
+            while ( ( interest = ready.poll() ) != null ) {
+                if ( interest == CLOSED ) { ready.offer(CLOSED); return events; } // wake other pollers
+                if ( dispatch(context, interest, events) ) delivered++;
+            }
+            if ( delivered > 0 || isClosed() ) break;
+
+            final long wait = timeout < 0 ? -1 : deadline - System.currentTimeMillis();
+            if ( timeout >= 0 && wait <= 0 ) break;
+            if ( ( interest = waitReady(context, wait) ) == null ) {
+                if ( timeout >= 0 ) break;
+                continue;
+            }
+            // the head of the queue - handled before the ones (if any) that follow it
+            if ( interest == CLOSED ) { ready.offer(CLOSED); break; }
+            if ( dispatch(context, interest, events) ) delivered++;
+        }
+        return events;
+    }
+
+    /**
+     * @return number of registrations (events) not yet handed out
+     */
+    @JRubyMethod
+    public IRubyObject size(final ThreadContext context) {
+        return context.runtime.newFixnum( pending.get() );
+    }
+
+    @JRubyMethod
+    public IRubyObject close(final ThreadContext context) {
+        if ( loop != null ) loop.close();
+        return context.runtime.getNil();
+    }
+
+    @JRubyMethod(name = "closed?")
+    public IRubyObject closed_p(final ThreadContext context) {
+        return context.runtime.newBoolean( isClosed() );
+    }
+
+    private boolean isClosed() {
+        return loop == null || loop.closed;
+    }
+
+    private void checkClosed(final Ruby runtime) {
+        if ( isClosed() ) throw runtime.newIOError("closed reactor");
+    }
+
+    private void submit(final Interest interest) {
+        loop.submit(interest);
+    }
+
+    // @return true if the event got handed out (false if still handshaking)
+    private boolean dispatch(final ThreadContext context, final Interest interest, final RubyArray events) {
+        final Ruby runtime = context.runtime;
+        IRubyObject event = runtime.newSymbol(EVENTS[interest.event]);
+        if ( interest.event >= CONNECT ) {
+            try {
+                final int ops = interest.socket.handshakeStep(context, interest.event == CONNECT);
+                if ( ops != 0 ) {
+                    // running delegated tasks : re-queued (by the task thread) once done
+                    if ( ! interest.socket.whenTasksDone(requeue(interest)) ) {
+                        interest.ops = ops; submit(interest);
+                    }
+                    return false;
+                }
+            }
+            catch (RaiseException e) {
+                debug(runtime, "Reactor handshake failed: " + e.getMessage());
+                event = e.getException();
+            }
+        }
+        pending.decrementAndGet();
+        if ( interest.callback.isNil() ) {
+            events.append( runtime.newArray(interest.socket, event) );
+        }
+        else {
+            interest.callback.callMethod(context, "call", new IRubyObject[] { interest.socket, event });
+        }
+        return true;
+    }
+
+    private Runnable requeue(final Interest interest) {
+        final LinkedBlockingQueue<Interest> ready = this.ready; // not holding the reactor
+        return new Runnable() {
+            public void run() { ready.offer(interest); }
+        };
+    }
+
+    private Interest waitReady(final ThreadContext context, final long timeout) {
+        final RubyThread thread = context.getThread();
+        final Thread javaThread = Thread.currentThread();
+        final Interest[] result = new Interest[1];
+        try {
+            thread.executeBlockingTask(new RubyThread.BlockingTask() {
+                public void run() throws InterruptedException {
+                    result[0] = timeout < 0 ? ready.take() : ready.poll(timeout, TimeUnit.MILLISECONDS);
+                }
+
+                public void wakeup() {
+                    javaThread.interrupt();
+                }
+            });
+        }
+        catch (InterruptedException e) { /* woken up */ }
+        return result[0];
+    }
+
+    // closed channels get noticed (swept) at least this often (millis)
+    private static final long SWEEP_INTERVAL = 1000;
+
+    /**
+     * The select loop (state) - the thread running it does not hold on to the
+     * reactor thus an unreachable reactor gets collected and the loop stops.
+     */
+    private static final class SelectLoop implements Runnable {
+
+        private final Ruby runtime;
+        private final WeakReference<SSLReactor> reactor;
+        final Selector selector;
+        // interests to be (re-)registered, by the selector thread
+        final ConcurrentLinkedQueue<Interest> registrations = new ConcurrentLinkedQueue<Interest>();
+        final LinkedBlockingQueue<Interest> ready = new LinkedBlockingQueue<Interest>();
+        final AtomicInteger pending = new AtomicInteger(0);
+        volatile boolean closed;
+
+        SelectLoop(final SSLReactor reactor, final Selector selector) {
+            this.runtime = reactor.getRuntime();
+            this.reactor = new WeakReference<SSLReactor>(reactor);
+            this.selector = selector;
+        }
+
+        void submit(final Interest interest) {
+            registrations.offer(interest);
+            selector.wakeup();
+        }
+
+        void close() {
+            if ( closed ) return;
+            closed = true;
+            selector.wakeup(); // the select loop closes the selector
+            ready.offer(CLOSED);
+        }
+
+        public void run() { selectLoop(); }
+
+        // runs on the reactor's (Java) thread - not touching any Ruby state
+        private void selectLoop() {
+            try {
+                long lastSweep = System.currentTimeMillis();
+                while ( ! closed && reactor.get() != null ) {
+                    Interest interest;
+                    while ( ( interest = registrations.poll() ) != null ) {
+                        register(interest);
+                    }
+
+                    // keys selected while flushing a cancelled key are pending already
+                    if ( selector.selectedKeys().isEmpty() ) selector.select(SWEEP_INTERVAL);
+                    else selector.selectNow();
+
+                    final long now = System.currentTimeMillis();
+                    if ( now - lastSweep >= SWEEP_INTERVAL ) {
+                        sweep(); lastSweep = now;
+                    }
+
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while ( keys.hasNext() ) {
+                        final SelectionKey key = keys.next(); keys.remove();
+                        final Interest[] interests = (Interest[]) key.attachment();
+                        try {
+                            final int readyOps = key.readyOps();
+                            int ops = key.interestOps();
+                            if ( ( readyOps & SelectionKey.OP_READ ) != 0 && interests[0] != null ) {
+                                ready.offer(interests[0]); interests[0] = null;
+                                ops &= ~SelectionKey.OP_READ;
+                            }
+                            if ( ( readyOps & SelectionKey.OP_WRITE ) != 0 && interests[1] != null ) {
+                                ready.offer(interests[1]); interests[1] = null;
+                                ops &= ~SelectionKey.OP_WRITE;
+                            }
+                            key.interestOps(ops);
+                        }
+                        catch (CancelledKeyException e) { // channel closed
+                            failed(interests);
+                        }
+                    }
+                }
+            }
+            catch (IOException e) {
+                debug(runtime, "Reactor select loop failed", e);
+                closed = true;
+                ready.offer(CLOSED);
+            }
+            finally {
+                try { selector.close(); }
+                catch (IOException e) { debug(runtime, "Reactor#close", e); }
+            }
+        }
+
+        private void register(final Interest interest) throws IOException {
+            final SelectableChannel channel = interest.channel;
+            SelectionKey key = channel.keyFor(selector);
+            if ( interest.ops == 0 ) { // cancel
+                if ( key != null ) {
+                    key.cancel();
+                    if ( key.attachment() != null ) cancelled((Interest[]) key.attachment());
+                }
+                return;
+            }
+            try {
+                if ( key != null && ! key.isValid() ) {
+                    selector.selectNow(); key = null; // flush the cancelled key
+                }
+                if ( key == null ) { // NOTE: made non-blocking by the registering thread
+                    key = channel.register(selector, 0, new Interest[2]);
+                }
+                final Interest[] interests = (Interest[]) key.attachment();
+                final int i = interest.ops == SelectionKey.OP_READ ? 0 : 1;
+                if ( interests[i] != null ) pending.decrementAndGet(); // replaced
+                interests[i] = interest;
+                key.interestOps(key.interestOps() | interest.ops);
+            }
+            catch (IOException e) { // e.g. ClosedChannelException
+                ready.offer(interest); // the (read/write/handshake) attempt will fail
+            }
+            catch (CancelledKeyException e) {
+                ready.offer(interest);
+            }
+            catch (IllegalBlockingModeException e) { // switched back to blocking
+                ready.offer(interest);
+            }
+        }
+
+        // hands out interests of closed channels (their keys got cancelled)
+        private void sweep() {
+            for ( SelectionKey key : selector.keys() ) {
+                if ( key.isValid() && key.channel().isOpen() ) continue;
+                key.cancel();
+                final Interest[] interests = (Interest[]) key.attachment();
+                if ( interests != null ) failed(interests);
+            }
+        }
+
+        private void failed(final Interest[] interests) {
+            for ( int i = 0; i < interests.length; i++ ) {
+                if ( interests[i] != null ) {
+                    ready.offer(interests[i]); interests[i] = null; // the attempt will fail
+                }
+            }
+        }
+
+        private void cancelled(final Interest[] interests) {
+            for ( int i = 0; i < interests.length; i++ ) {
+                if ( interests[i] != null ) {
+                    interests[i] = null; pending.decrementAndGet();
+                }
+            }
+        }
+
+    }
+
+}// SSLReactor
@@ -0,0 +1,133 @@
+/***** BEGIN LICENSE BLOCK *****
+ * Version: EPL 1.0/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Eclipse Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either of the GNU General Public License Version 2 or later (the "GPL"),
+ * or the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the EPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the EPL, the GPL or the LGPL.
+ ***** END LICENSE BLOCK *****/
+package org.jruby.ext.openssl;
+
+import java.util.Arrays;
+
+import javax.net.ssl.SSLSessionContext;
+
+import org.jruby.Ruby;
+import org.jruby.RubyClass;
+import org.jruby.RubyModule;
+import org.jruby.RubyObject;
+import org.jruby.RubyString;
+import org.jruby.RubyTime;
+import org.jruby.anno.JRubyMethod;
+import org.jruby.exceptions.RaiseException;
+import org.jruby.runtime.ObjectAllocator;
+import org.jruby.runtime.ThreadContext;
+import org.jruby.runtime.Visibility;
+import org.jruby.runtime.builtin.IRubyObject;
+import org.jruby.util.ByteList;
+
+import static org.jruby.ext.openssl.SSL._SSL;
+
+/**
+ * OpenSSL::SSL::Session - a (resumable) SSL session, backed by JSSE's session.
+ *
+ * Sessions are only cached by JSSE within the SSLContext they were negotiated
+ * with, thus re-using a session only works for sockets sharing the same
+ * OpenSSL::SSL::SSLContext (connecting to the same peer).
+ */
+public class SSLSession extends RubyObject {
+
+    private static final long serialVersionUID = -2416134258719582137L;
+
+    private static ObjectAllocator SESSION_ALLOCATOR = new ObjectAllocator() {
+        public IRubyObject allocate(Ruby runtime, RubyClass klass) {
+            return new SSLSession(runtime, klass);
+        }
+    };
+
+    public static void createSession(final Ruby runtime, final RubyModule _SSL) { // OpenSSL::SSL
+        RubyClass _Session = _SSL.defineClassUnder("Session", runtime.getObject(), SESSION_ALLOCATOR);
+        RubyClass _OpenSSLError = runtime.getModule("OpenSSL").getClass("OpenSSLError");
+        _Session.defineClassUnder("SessionError", _OpenSSLError, _OpenSSLError.getAllocator());
+        _Session.defineAnnotatedMethods(SSLSession.class);
+    }
+
+    public SSLSession(Ruby runtime, RubyClass type) {
+        super(runtime, type);
+    }
+
+    SSLSession(Ruby runtime, javax.net.ssl.SSLSession sslSession) {
+        this(runtime, _SSL(runtime).getClass("Session"));
+        this.sslSession = sslSession;
+    }
+
+    static RaiseException newSessionError(Ruby runtime, String message) {
+        final RubyClass _Session = _SSL(runtime).getClass("Session");
+        return Utils.newError(runtime, _Session.getClass("SessionError"), message, false);
+    }
+
+    private javax.net.ssl.SSLSession sslSession;
+
+    @JRubyMethod(visibility = Visibility.PRIVATE)
+    public IRubyObject initialize(final ThreadContext context, final IRubyObject arg) {
+        final Ruby runtime = context.runtime;
+        if ( arg instanceof SSLSocket ) {
+            sslSession = ((SSLSocket) arg).sslSession();
+            if ( sslSession == null ) {
+                throw newSessionError(runtime, "no session available");
+            }
+            return this;
+        }
+        // MRI also allows to de-serialize (PEM/DER) sessions, JSSE does not
+        throw newSessionError(runtime, "can not create a session from " + arg.getMetaClass().getName());
+    }
+
+    javax.net.ssl.SSLSession sslSession() {
+        return sslSession;
+    }
+
+    @JRubyMethod
+    public IRubyObject id(final ThreadContext context) {
+        final byte[] id = sslSession.getId();
+        return RubyString.newString(context.runtime, new ByteList(id, false));
+    }
+
+    @JRubyMethod
+    public IRubyObject time(final ThreadContext context) {
+        return RubyTime.newTime(context.runtime, sslSession.getCreationTime());
+    }
+
+    @JRubyMethod
+    public IRubyObject timeout(final ThreadContext context) {
+        final SSLSessionContext sessionContext = sslSession.getSessionContext();
+        if ( sessionContext == null ) return context.runtime.getNil();
+        return context.runtime.newFixnum( sessionContext.getSessionTimeout() );
+    }
+
+    @JRubyMethod(name = "==")
+    public IRubyObject op_eqq(final ThreadContext context, final IRubyObject other) {
+        if ( other instanceof SSLSession ) {
+            final javax.net.ssl.SSLSession that = ((SSLSession) other).sslSession;
+            return context.runtime.newBoolean( Arrays.equals(sslSession.getId(), that.getId()) );
+        }
+        return context.runtime.getFalse();
+    }
+
+}// SSLSession
@@ -29,7 +29,10 @@ package org.jruby.ext.openssl;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.IllegalBlockingModeException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -39,21 +42,29 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLPeerUnverifiedException;
-import javax.net.ssl.SSLSession;
 
 import org.jruby.Ruby;
 import org.jruby.RubyArray;
 import org.jruby.RubyClass;
+import org.jruby.RubyHash;
 import org.jruby.RubyIO;
 import org.jruby.RubyModule;
 import org.jruby.RubyNumeric;
 import org.jruby.RubyObject;
+import org.jruby.RubyRegexp;
 import org.jruby.RubyString;
 import org.jruby.RubyThread;
 import org.jruby.anno.JRubyMethod;
@@ -66,6 +77,10 @@ import org.jruby.runtime.ThreadContext;
 import org.jruby.runtime.Visibility;
 import org.jruby.runtime.builtin.IRubyObject;
 import org.jruby.util.ByteList;
+import org.joni.Matcher;
+import org.joni.Option;
+import org.joni.Regex;
+import org.joni.Region;
 import org.jruby.runtime.Visibility;
 
 import static org.jruby.ext.openssl.SSL._SSL;
@@ -116,12 +131,22 @@ public class SSLSocket extends RubyObject {
     private SSLEngine engine;
     private RubyIO io;
 
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    // NOTE: buffers are only lent (from the pool) while reading/writing
     private ByteBuffer peerAppData;
     private ByteBuffer peerNetData;
-    private ByteBuffer netData;
-    private ByteBuffer dummy;
+    private ByteBuffer netData; // guarded by netLock
+    // a (re-)handshake might wrap on a reading thread while another one writes
+    private final Object netLock = new Object();
+    private int appBufferSize;
+    private int packetBufferSize;
 
     private boolean initialHandshake = false;
+    private boolean sessionReused;
+    private long handshakeStart; // millis (to tell a re-used session)
+    private long handshakeStartNanos;
+    private SSLSession session; // OpenSSL::SSL::Session to be re-used
 
     private SSLEngineResult.HandshakeStatus hsStatus;
     private SSLEngineResult.Status status = null;
@@ -155,7 +180,7 @@ public class SSLSocket extends RubyObject {
         return Utils.invokeSuper(context, this, args, unused); // super()
     }
 
-    private void ossl_ssl_setup(final ThreadContext context)
+    private void ossl_ssl_setup(final ThreadContext context, final boolean client)
         throws NoSuchAlgorithmException, KeyManagementException, IOException {
         if ( engine == null ) {
             final Socket socket = getSocketChannel().socket();
@@ -163,15 +188,107 @@ public class SSLSocket extends RubyObject {
             // SNI support will not be attempted unless hostname is explicitly set by the caller
             String peerHost = this.callMethod(context, "hostname").toString();
             int peerPort = socket.getPort();
+            if ( client ) {
+                // JSSE only caches (and resumes) client sessions per peer host/port,
+                // the engine is bound to the requested session's peer to resume it
+                final javax.net.ssl.SSLSession resume = session == null ? null : session.sslSession();
+                if ( resume != null && resume.isValid() && resume.getPeerHost() != null &&
+                    ( peerHost.length() == 0 || peerHost.equals(resume.getPeerHost()) ) ) {
+                    peerHost = resume.getPeerHost(); peerPort = resume.getPeerPort();
+                }
+                else {
+                    if ( resume != null ) debug(context.runtime, "SSLSocket session not resumable (for host: " + peerHost + ")");
+                    // an IP address (literal) is never sent as a SNI host name
+                    if ( peerHost.length() == 0 ) peerHost = socket.getInetAddress().getHostAddress();
+                    // JSSE looks up (and caches) client sessions by host/port, a port of its own keeps
+                    // the session from being resumed by other connections - unless set as session=
+                    if ( ! sslContext.isSessionCacheClient() ) peerPort = uncachedPort();
+                }
+            }
             engine = sslContext.createSSLEngine(peerHost, peerPort);
-            final SSLSession session = engine.getSession();
-            peerNetData = ByteBuffer.allocate(session.getPacketBufferSize());
-            peerAppData = ByteBuffer.allocate(session.getApplicationBufferSize());
-            netData = ByteBuffer.allocate(session.getPacketBufferSize());
-            peerNetData.limit(0);
+            if ( ! client ) sslContext.registerSocket(engine, this);
+            sslContext.setupApplicationProtocols(engine, client);
+            final javax.net.ssl.SSLSession sslSession = engine.getSession();
+            appBufferSize = sslSession.getApplicationBufferSize();
+            packetBufferSize = sslSession.getPacketBufferSize();
+        }
+    }
+
+    private static final AtomicInteger uncachedPorts = new AtomicInteger(0);
+
+    // @return a (unique) fake port, never -1 as JSSE does not cache sessions w/o a port
+    private static int uncachedPort() {
+        return -2 - ( uncachedPorts.getAndIncrement() & 0x3FFFFFFF );
+    }
+
+    private void acquireReadBuffers() {
+        acquireReadBuffers(1);
+    }
+
+    // network buffer big enough to hold (at least) the given number of records
+    private void acquireReadBuffers(final int records) {
+        final int capacity = records * packetBufferSize;
+        if ( peerNetData == null ) { // kept ready for channel reads
+            peerNetData = ByteBufferPool.INSTANCE.acquire(capacity);
+        }
+        else if ( peerNetData.capacity() < capacity ) { // keep (partial) data read
+            final ByteBuffer buffer = ByteBufferPool.INSTANCE.acquire(capacity);
+            peerNetData.flip(); buffer.put(peerNetData);
+            ByteBufferPool.INSTANCE.release(peerNetData);
+            peerNetData = buffer;
+        }
+        if ( peerAppData == null ) {
+            peerAppData = ByteBufferPool.INSTANCE.acquire(appBufferSize);
             peerAppData.limit(0);
+        }
+    }
+
+    private void acquireWriteBuffer() {
+        acquireWriteBuffer(1);
+    }
+
+    // a staging buffer big enough to hold (at least) the given number of records
+    private void acquireWriteBuffer(final int records) {
+        final int capacity = records * packetBufferSize;
+        synchronized (netLock) {
+            if ( netData != null ) {
+                if ( netData.capacity() >= capacity || netData.hasRemaining() ) return;
+                ByteBufferPool.INSTANCE.release(netData);
+            }
+            netData = ByteBufferPool.INSTANCE.acquire(capacity);
             netData.limit(0);
-            dummy = ByteBuffer.allocate(0);
+        }
+    }
+
+    // returns (back to the pool) buffers not holding any (unprocessed) data
+    private void releaseReadBuffers() {
+        if ( peerNetData != null && peerNetData.position() == 0 ) {
+            ByteBufferPool.INSTANCE.release(peerNetData); peerNetData = null;
+        }
+        if ( peerAppData != null && ! peerAppData.hasRemaining() ) {
+            ByteBufferPool.INSTANCE.release(peerAppData); peerAppData = null;
+        }
+    }
+
+    private void releaseWriteBuffer() {
+        synchronized (netLock) {
+            if ( netData != null && ! netData.hasRemaining() ) {
+                ByteBufferPool.INSTANCE.release(netData); netData = null;
+            }
+        }
+    }
+
+    private void releaseBuffers() {
+        if ( peerNetData != null ) {
+            ByteBufferPool.INSTANCE.release(peerNetData); peerNetData = null;
+        }
+        if ( peerAppData != null ) {
+            ByteBufferPool.INSTANCE.release(peerAppData); peerAppData = null;
+        }
+        synchronized (netLock) {
+            if ( netData != null ) {
+                ByteBufferPool.INSTANCE.release(netData); netData = null;
+            }
         }
     }
 
@@ -182,7 +299,17 @@ public class SSLSocket extends RubyObject {
 
     @JRubyMethod
     public IRubyObject connect_nonblock(ThreadContext context) {
-        return connectCommon(context, false);
+        return connect_nonblock(context, null);
+    }
+
+    @JRubyMethod
+    public IRubyObject connect_nonblock(ThreadContext context, IRubyObject opts) {
+        try {
+            return connectCommon(context, false);
+        }
+        catch (WouldBlock e) {
+            return wouldBlock(context, e, opts);
+        }
     }
 
     private IRubyObject connectCommon(final ThreadContext context, boolean blocking) {
@@ -194,13 +321,16 @@ public class SSLSocket extends RubyObject {
 
         try {
             if ( ! initialHandshake ) {
-                ossl_ssl_setup(context);
+                ossl_ssl_setup(context, true);
                 engine.setUseClientMode(true);
-                engine.beginHandshake();
-                hsStatus = engine.getHandshakeStatus();
-                initialHandshake = true;
+                beginHandshake(true);
+            }
+            try {
+                doHandshake(blocking);
+            }
+            finally {
+                releaseReadBuffers(); releaseWriteBuffer();
             }
-            doHandshake(blocking);
         }
         catch (SSLHandshakeException e) {
             // unlike server side, client should close outbound channel even if
@@ -234,7 +364,17 @@ public class SSLSocket extends RubyObject {
 
     @JRubyMethod
     public IRubyObject accept_nonblock(ThreadContext context) {
-        return acceptCommon(context, false);
+        return accept_nonblock(context, null);
+    }
+
+    @JRubyMethod
+    public IRubyObject accept_nonblock(ThreadContext context, IRubyObject opts) {
+        try {
+            return acceptCommon(context, false);
+        }
+        catch (WouldBlock e) {
+            return wouldBlock(context, e, opts);
+        }
     }
 
     public IRubyObject acceptCommon(final ThreadContext context, boolean blocking) {
@@ -246,7 +386,7 @@ public class SSLSocket extends RubyObject {
 
         try {
             if ( ! initialHandshake ) {
-                ossl_ssl_setup(context);
+                ossl_ssl_setup(context, false);
                 engine.setUseClientMode(false);
                 final IRubyObject verify_mode;
                 if( ! sslContext.isNil() &&
@@ -263,11 +403,14 @@ public class SSLSocket extends RubyObject {
                         engine.setNeedClientAuth(true);
                     }
                 }
-                engine.beginHandshake();
-                hsStatus = engine.getHandshakeStatus();
-                initialHandshake = true;
+                beginHandshake(false);
+            }
+            try {
+                doHandshake(blocking);
+            }
+            finally {
+                releaseReadBuffers(); releaseWriteBuffer();
             }
-            doHandshake(blocking);
         }
         catch (SSLHandshakeException e) {
             throw newSSLError(runtime, e);
@@ -294,22 +437,188 @@ public class SSLSocket extends RubyObject {
         return runtime.newFixnum(verifyResult);
     }
 
-    // This select impl is a copy of RubyThread.select, then blockingLock is
-    // removed. This impl just set
-    // SelectableChannel.configureBlocking(false) permanently instead of setting
-    // temporarily. SSLSocket requires wrapping IO to be selectable so it should
-    // be OK to set configureBlocking(false) permanently.
+    // NOTE: reads/writes are attempted first, only when they would block a selector
+    // is borrowed from the runtime's pool (registering the channel for a single select).
+    // SSLSocket requires wrapping IO to be selectable so it should be OK to set
+    // SelectableChannel.configureBlocking(false) permanently.
     private boolean waitSelect(final int operations, final boolean blocking) throws IOException {
         if ( ! ( io.getChannel() instanceof SelectableChannel ) ) {
             return true;
         }
+        final SelectableChannel selectable = (SelectableChannel) io.getChannel();
+
+        // a handshake step (by the SSL::Reactor) - the caller selects for the operation
+        if ( ! blocking && handshakeStepping ) {
+            if ( ( operations & SelectionKey.OP_READ ) != 0 ) readWouldBlock(getRuntime());
+            writeWouldBlock(getRuntime());
+        }
+
+        // blocking I/O - the channel read/write (that follows) waits
+        if ( blocking && isBlockingIO(selectable) ) {
+            return true;
+        }
+
+        return waitSelectPooled(selectable, operations, blocking);
+    }
+
+    // NOTE: plain blocking channel I/O (instead of selecting) for blocking calls,
+    // by default on virtual threads (which park cheaply) or when explicitly set
+    // using -Djruby.openssl.ssl.blocking_io=true (or false to always select)
+    private static final String BLOCKING_IO = System.getProperty("jruby.openssl.ssl.blocking_io");
+    private static final Method isVirtual; // Thread (Java 21)
+
+    static {
+        Method virtual = null;
+        try {
+            virtual = Thread.class.getMethod("isVirtual");
+        }
+        catch (NoSuchMethodException e) { /* not supported */ }
+        catch (SecurityException e) { /* not supported */ }
+        isVirtual = virtual;
+    }
+
+    // the mode is decided once (on the first blocking wait) for the socket, a
+    // non-blocking call (or SSL::Reactor registration) switches it to selecting
+    private Boolean blockingIO;
+
+    private boolean isBlockingIO(final SelectableChannel selectable) throws IOException {
+        Boolean blockingIO = this.blockingIO;
+        if ( blockingIO == null ) {
+            // a channel already non-blocking (e.g. selected) stays that way
+            blockingIO = selectable.isBlocking() && useBlockingIO() && configureBlocking(selectable);
+            this.blockingIO = blockingIO;
+        }
+        return blockingIO;
+    }
+
+    /**
+     * Switches the socket (for good) from blocking channel I/O to selecting.
+     */
+    void selectingIO() throws IOException {
+        blockingIO = Boolean.FALSE;
+        final Object channel = io.getChannel();
+        if ( channel instanceof SelectableChannel && ((SelectableChannel) channel).isBlocking() ) {
+            ((SelectableChannel) channel).configureBlocking(false);
+        }
+    }
+
+    private static boolean useBlockingIO() {
+        if ( "true".equals(BLOCKING_IO) ) return true;
+        if ( "false".equals(BLOCKING_IO) || isVirtual == null ) return false;
+        try {
+            return (Boolean) isVirtual.invoke( Thread.currentThread() );
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    // switch the channel into blocking mode
+    private static boolean configureBlocking(final SelectableChannel selectable) throws IOException {
+        if ( selectable.isBlocking() ) return true;
+        try {
+            selectable.configureBlocking(true);
+            return true;
+        }
+        catch (IllegalBlockingModeException e) {
+            return false; // another thread is selecting (using a pooled selector)
+        }
+    }
+
+    private int channelRead(final ByteBuffer buffer) throws IOException {
+        final SocketChannel channel = getSocketChannel();
+        if ( ! channel.isBlocking() ) return channel.read(buffer);
+        return blockingChannelIO(channel, buffer, true);
+    }
+
+    private int channelWrite(final ByteBuffer buffer) throws IOException {
+        final SocketChannel channel = getSocketChannel();
+        if ( ! channel.isBlocking() ) return channel.write(buffer);
+        return blockingChannelIO(channel, buffer, false);
+    }
+
+    // a blocking read/write, Thread#raise (or #kill) interrupts it - closing the channel
+    private int blockingChannelIO(final SocketChannel channel,
+        final ByteBuffer buffer, final boolean read) throws IOException {
+        final RubyThread thread = getRuntime().getCurrentContext().getThread();
+        final Thread javaThread = Thread.currentThread();
+        final int[] result = new int[1];
+        final IOException[] error = new IOException[1];
+        try {
+            io.addBlockingThread(thread);
+            thread.executeBlockingTask(new RubyThread.BlockingTask() {
+                public void run() {
+                    try {
+                        result[0] = read ? channel.read(buffer) : channel.write(buffer);
+                    }
+                    catch (ClosedByInterruptException e) {
+                        Thread.interrupted(); // clear - pending thread events get polled
+                        error[0] = e;
+                    }
+                    catch (IOException e) {
+                        error[0] = e;
+                    }
+                }
+
+                public void wakeup() {
+                    javaThread.interrupt();
+                }
+            });
+        }
+        catch (InterruptedException e) {
+            throw new ClosedByInterruptException();
+        }
+        finally {
+            io.removeBlockingThread(thread);
+            thread.afterBlockingCall();
+        }
+        if ( error[0] != null ) throw error[0];
+        return result[0];
+    }
+
+    // using a selector from the pool, registering the channel for a single select
+    private boolean waitSelectPooled(final SelectableChannel selectable,
+        final int operations, final boolean blocking) throws IOException {
         final Ruby runtime = getRuntime();
-        final RubyThread thread = runtime.getCurrentContext().getThread();
 
-        SelectableChannel selectable = (SelectableChannel)io.getChannel();
-        selectable.configureBlocking(false);
+        selectingIO();
         final Selector selector = runtime.getSelectorPool().get();
         final SelectionKey key = selectable.register(selector, operations);
+        try {
+            return doSelect(key, operations, blocking);
+        }
+        finally {
+            // Note: I don't like ignoring these exceptions, but it's
+            // unclear how likely they are to happen or what damage we
+            // might do by ignoring them. Note that the pieces are separate
+            // so that we can ensure one failing does not affect the others
+            // running.
+
+            // clean up the key in the selector
+            try {
+                key.cancel();
+                selector.selectNow();
+            }
+            catch (Exception e) { // ignore
+                debugStackTrace(runtime, e);
+            }
+
+            // shut down and null out the selector
+            try {
+                runtime.getSelectorPool().put(selector);
+            }
+            catch (Exception e) { // ignore
+                debugStackTrace(runtime, e);
+            }
+        }
+    }
+
+    // This select impl is a copy of RubyThread.select, then blockingLock is removed.
+    private boolean doSelect(final SelectionKey key,
+        final int operations, final boolean blocking) {
+        final Ruby runtime = getRuntime();
+        final RubyThread thread = runtime.getCurrentContext().getThread();
+        final Selector selector = key.selector();
 
         try {
             io.addBlockingThread(thread);
@@ -323,15 +632,10 @@ public class SSLSocket extends RubyObject {
                             result[0] = selector.selectNow();
 
                             if ( result[0] == 0 ) {
-                                if ((operations & SelectionKey.OP_READ) != 0 && (operations & SelectionKey.OP_WRITE) != 0) {
-                                    if ( key.isReadable() ) {
-                                        writeWouldBlock(runtime);
-                                    } else if ( key.isWritable() ) {
-                                        readWouldBlock(runtime);
-                                    } else { //neither, pick one
-                                        readWouldBlock(runtime);
-                                    }
-                                } else if ((operations & SelectionKey.OP_READ) != 0) {
+                                // NOTE: key's ready set is stale (from a previous select)
+                                // when nothing got selected, thus with OP_READ | OP_WRITE
+                                // its neither readable nor writable - pick one (read)
+                                if ((operations & SelectionKey.OP_READ) != 0) {
                                     readWouldBlock(runtime);
                                 } else if ((operations & SelectionKey.OP_WRITE) != 0) {
                                     writeWouldBlock(runtime);
@@ -354,9 +658,9 @@ public class SSLSocket extends RubyObject {
 
             if ( result[0] >= 1 ) {
                 Set<SelectionKey> keySet = selector.selectedKeys();
-                if ( keySet.iterator().next() == key ) {
-                    return true;
-                }
+                final boolean selected = keySet.contains(key);
+                keySet.clear(); // next select will (re-)add the key
+                return selected;
             }
 
             return false;
@@ -365,31 +669,6 @@ public class SSLSocket extends RubyObject {
             return false;
         }
         finally {
-            // Note: I don't like ignoring these exceptions, but it's
-            // unclear how likely they are to happen or what damage we
-            // might do by ignoring them. Note that the pieces are separate
-            // so that we can ensure one failing does not affect the others
-            // running.
-
-            // clean up the key in the selector
-            try {
-                if ( key != null ) key.cancel();
-                if ( selector != null ) selector.selectNow();
-            }
-            catch (Exception e) { // ignore
-                debugStackTrace(getRuntime(), e);
-            }
-
-            // shut down and null out the selector
-            try {
-                if ( selector != null ) {
-                    runtime.getSelectorPool().put(selector);
-                }
-            }
-            catch (Exception e) { // ignore
-                debugStackTrace(getRuntime(), e);
-            }
-
             // remove this thread as a blocker against the given IO
             io.removeBlockingThread(thread);
 
@@ -398,25 +677,125 @@ public class SSLSocket extends RubyObject {
         }
     }
 
+    // NOTE: would block is only ever signalled while non-blocking, the internal
+    // (pre-allocated) exception gets converted by the *_nonblock methods into a
+    // SSLErrorWait* error or returned as a symbol when given exception: false
     private static void readWouldBlock(final Ruby runtime) {
-        throw newSSLErrorWaitReadable(runtime, "read would block");
+        throw WouldBlock.READ;
     }
 
     private static void writeWouldBlock(final Ruby runtime) {
-        throw newSSLErrorWaitWritable(runtime, "write would block");
+        throw WouldBlock.WRITE;
     }
 
-    private void doHandshake(boolean blocking) throws IOException {
-        while (true) {
-            SSLEngineResult res;
-            boolean ready = waitSelect(SelectionKey.OP_READ | SelectionKey.OP_WRITE, blocking);
+    private static final class WouldBlock extends RuntimeException {
 
-            // if not blocking, raise EAGAIN
-            if ( ! blocking && ! ready ) {
-                throw getRuntime().newErrnoEAGAINError("Resource temporarily unavailable");
-            }
+        static final WouldBlock READ = new WouldBlock(true, "read would block");
+        static final WouldBlock WRITE = new WouldBlock(false, "write would block");
+
+        final boolean read;
+
+        private WouldBlock(final boolean read, final String message) {
+            super(message);
+            this.read = read;
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            return this; // no stack-trace
+        }
+
+    }
 
-            // otherwise, proceed as before
+    private static IRubyObject wouldBlock(final ThreadContext context, final WouldBlock e, final IRubyObject opts) {
+        final Ruby runtime = context.runtime;
+        if ( isException(context, opts) ) {
+            if ( e.read ) throw newSSLErrorWaitReadable(runtime, e.getMessage());
+            throw newSSLErrorWaitWritable(runtime, e.getMessage());
+        }
+        return runtime.newSymbol(e.read ? "wait_readable" : "wait_writable");
+    }
+
+    // exception: false given in the (nonblocking method) options
+    private static boolean isException(final ThreadContext context, final IRubyObject opts) {
+        if ( opts instanceof RubyHash ) {
+            final IRubyObject exception = ((RubyHash) opts).op_aref(context, context.runtime.newSymbol("exception"));
+            return exception != context.runtime.getFalse();
+        }
+        return true;
+    }
+
+    private boolean handshakeStepping;
+
+    /**
+     * Advances the (initial) handshake as far as possible, without selecting.
+     * @return 0 once done, otherwise the operation (<code>SelectionKey.OP_READ</code> or
+     * <code>OP_WRITE</code>) the channel needs to get ready for to continue
+     */
+    int handshakeStep(final ThreadContext context, final boolean client) {
+        handshakeStepping = true;
+        try {
+            if ( client ) connectCommon(context, false);
+            else acceptCommon(context, false);
+            return 0;
+        }
+        catch (WouldBlock e) {
+            return e.read ? SelectionKey.OP_READ : SelectionKey.OP_WRITE;
+        }
+        finally {
+            handshakeStepping = false;
+        }
+    }
+
+    private void beginHandshake(final boolean client) throws IOException {
+        handshakeStart = System.currentTimeMillis();
+        handshakeStartNanos = System.nanoTime();
+        sslContext.getStatistics().handshakeStarted(client);
+        try {
+            engine.beginHandshake();
+        }
+        catch (IOException e) {
+            sslContext.getStatistics().handshakeFailed(); throw e;
+        }
+        catch (RuntimeException e) {
+            sslContext.getStatistics().handshakeFailed(); throw e;
+        }
+        hsStatus = engine.getHandshakeStatus();
+        initialHandshake = true;
+    }
+
+    private void doHandshake(final boolean blocking) throws IOException {
+        try {
+            handshake(blocking);
+        }
+        catch (IOException e) {
+            if ( initialHandshake ) sslContext.getStatistics().handshakeFailed();
+            throw e;
+        }
+        catch (WouldBlock e) {
+            throw e; // not a failure, the (non-blocking) handshake continues
+        }
+        catch (RuntimeException e) { // e.g. raised from a Ruby callback
+            if ( initialHandshake ) sslContext.getStatistics().handshakeFailed();
+            throw e;
+        }
+    }
+
+    // NOTE: only selects when actually blocked - on an unwrap underflow (waiting for
+    // the peer) or a partial flush, tasks and wraps do not need the socket to be ready
+    private void handshake(final boolean blocking) throws IOException {
+        synchronized (netLock) { // netData is not released (by a writer) meanwhile
+            handshakeLoop(blocking);
+        }
+    }
+
+    private void handshakeLoop(final boolean blocking) throws IOException {
+        acquireReadBuffers(); acquireWriteBuffer();
+        while (true) {
+            // wrapped handshake data gets written once the peer is to respond
+            if ( hsStatus != SSLEngineResult.HandshakeStatus.NEED_WRAP && netData.hasRemaining() ) {
+                flushHandshakeData(blocking);
+            }
 
             switch (hsStatus) {
             case FINISHED:
@@ -424,28 +803,32 @@ public class SSLSocket extends RubyObject {
                 if ( initialHandshake ) finishInitialHandshake();
                 return;
             case NEED_TASK:
-                doTasks();
+                doTasks(blocking);
                 break;
             case NEED_UNWRAP:
                 if (readAndUnwrap(blocking) == -1 && hsStatus != SSLEngineResult.HandshakeStatus.FINISHED) {
                     throw new SSLHandshakeException("Socket closed");
                 }
-                // during initialHandshake, calling readAndUnwrap that results UNDERFLOW
-                // does not mean writable. we explicitly wait for readable channel to avoid
-                // busy loop.
-                if (initialHandshake && status == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
-                    waitSelect(SelectionKey.OP_READ, blocking);
+                // a partial (or no) record - wait for the channel to get readable
+                if ( status == SSLEngineResult.Status.BUFFER_UNDERFLOW &&
+                     hsStatus == SSLEngineResult.HandshakeStatus.NEED_UNWRAP ) {
+                    waitSelect(SelectionKey.OP_READ, blocking); // non-blocking: raises if not readable
                 }
                 break;
             case NEED_WRAP:
-                if ( netData.hasRemaining() ) {
-                    while ( flushData(blocking) ) { /* loop */ }
+                // consecutive records (a whole flight) are staged and written at once
+                netData.compact();
+                final SSLEngineResult res;
+                try {
+                    res = engine.wrap(EMPTY, netData);
+                }
+                finally {
+                    netData.flip();
                 }
-                netData.clear();
-                res = engine.wrap(dummy, netData);
                 hsStatus = res.getHandshakeStatus();
-                netData.flip();
-                flushData(blocking);
+                if ( res.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW ) {
+                    flushHandshakeData(blocking); // staging buffer is full
+                }
                 break;
             default:
                 throw new IllegalStateException("Unknown handshaking status: " + hsStatus);
@@ -453,13 +836,128 @@ public class SSLSocket extends RubyObject {
         }
     }
 
-    private void doTasks() {
+    private void flushHandshakeData(final boolean blocking) throws IOException {
+        while ( flushData(blocking) ) { // partial write (non-blocking)
+            waitSelect(SelectionKey.OP_WRITE, blocking); // raises if still not writable
+        }
+    }
+
+    private DelegatedTasks delegatedTasks; // tasks running on the context's executor
+
+    // NOTE: non-blocking callers do not wait for the tasks, yet the channel does not
+    // get readable due the tasks completing : a handshake stepped by the SSL::Reactor
+    // waits for readable and gets re-queued (woken up) once the tasks are done, other
+    // callers are told to wait for writable (thus retry right away, selecting again)
+    private void doTasks(final boolean blocking) throws IOException {
+        if ( delegatedTasks == null ) {
+            final ExecutorService executor = sslContext.getTaskExecutor();
+            if ( executor == null ) {
+                setVerifyResult( runTasks(engine, sslContext.getStatistics()) );
+                hsStatus = engine.getHandshakeStatus();
+                return;
+            }
+            final SSLEngine engine = this.engine;
+            final SSLStatistics statistics = sslContext.getStatistics();
+            delegatedTasks = new DelegatedTasks(new Callable<Integer>() {
+                public Integer call() {
+                    return runTasks(engine, statistics);
+                }
+            });
+            executor.execute(delegatedTasks);
+        }
+        if ( ! blocking && ! delegatedTasks.isDone() ) {
+            if ( handshakeStepping ) readWouldBlock(getRuntime());
+            writeWouldBlock(getRuntime());
+        }
+        // tasks submitted by a (previously interrupted) blocking call are waited for
+        final ThreadContext context = getRuntime().getCurrentContext();
+        while ( ! delegatedTasks.isDone() ) {
+            waitTasks(context, delegatedTasks);
+            context.pollThreadEvents(); // Thread#raise / Thread#kill
+        }
+        try {
+            setVerifyResult( delegatedTasks.get() );
+        }
+        catch (InterruptedException e) { // not happening - we're done
+            throw new SSLException(e);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+            if ( cause instanceof Error ) throw (Error) cause;
+            throw new SSLException(cause);
+        }
+        finally {
+            delegatedTasks = null;
+        }
+        hsStatus = engine.getHandshakeStatus();
+    }
+
+    /**
+     * Runs the engine's delegated tasks (on the current thread).
+     * @return the peer verification result, -1 if not verified by the tasks
+     */
+    static int runTasks(final SSLEngine engine, final SSLStatistics statistics) {
+        final SSLContext.Verification verification = SSLContext.Verification.begin();
+        final long start = System.nanoTime();
         Runnable task;
         while ((task = engine.getDelegatedTask()) != null) {
             task.run();
         }
-        hsStatus = engine.getHandshakeStatus();
-        verifyResult = sslContext.getLastVerifyResult();
+        statistics.taskTime.record(System.nanoTime() - start);
+        if ( verification.result != -1 ) statistics.verifyTime.record(verification.nanos);
+        return verification.result;
+    }
+
+    private void setVerifyResult(final int result) {
+        if ( result != -1 ) verifyResult = result;
+    }
+
+    /**
+     * Sets the callback to be notified (on a task thread) once the delegated
+     * tasks (started by a non-blocking handshake step) complete.
+     * @return false if there are no tasks running (the callback won't be called)
+     */
+    boolean whenTasksDone(final Runnable callback) {
+        final DelegatedTasks tasks = delegatedTasks;
+        if ( tasks == null ) return false;
+        tasks.callback.set(callback);
+        if ( tasks.isDone() ) tasks.done(); // completed meanwhile
+        return true;
+    }
+
+    private static final class DelegatedTasks extends FutureTask<Integer> {
+
+        final AtomicReference<Runnable> callback = new AtomicReference<Runnable>();
+
+        DelegatedTasks(Callable<Integer> tasks) { super(tasks); }
+
+        @Override // called (once completed) by the task thread
+        protected void done() {
+            final Runnable callback = this.callback.getAndSet(null);
+            if ( callback != null ) callback.run();
+        }
+
+    }
+
+    private static void waitTasks(final ThreadContext context, final Future<?> tasks) {
+        final RubyThread thread = context.getThread();
+        final Thread javaThread = Thread.currentThread();
+        try {
+            thread.executeBlockingTask(new RubyThread.BlockingTask() {
+                public void run() throws InterruptedException {
+                    try {
+                        tasks.get();
+                    }
+                    catch (ExecutionException e) { /* handled by doTasks */ }
+                }
+
+                public void wakeup() {
+                    javaThread.interrupt();
+                }
+            });
+        }
+        catch (InterruptedException e) { /* woken up */ }
     }
 
     private boolean flushData(boolean blocking) throws IOException {
@@ -479,40 +977,116 @@ public class SSLSocket extends RubyObject {
     private int writeToChannel(ByteBuffer buffer, boolean blocking) throws IOException {
         int totalWritten = 0;
         while ( buffer.hasRemaining() ) {
-            totalWritten += getSocketChannel().write(buffer);
+            final int written = channelWrite(buffer);
+            totalWritten += written;
             if ( ! blocking ) break; // don't continue attempting to read
+            if ( written == 0 ) waitSelect(SelectionKey.OP_WRITE, true);
         }
+        sslContext.getStatistics().written(totalWritten);
         return totalWritten;
     }
 
     private void finishInitialHandshake() {
+        if ( ! initialHandshake ) return;
         initialHandshake = false;
+
+        final javax.net.ssl.SSLSession session = engine.getSession();
+        final boolean client = engine.getUseClientMode();
+        final boolean reused = sessionReused = SSLContext.isSessionReused(session, handshakeStart);
+        sslContext.getStatistics().handshakeFinished(client, reused, System.nanoTime() - handshakeStartNanos);
+        sslContext.sessionEstablished(getRuntime().getCurrentContext(), this, session, client, reused);
+    }
+
+    // max number of TLS records wrapped (and written to the channel) at once
+    private static final int WRITE_RECORDS = Math.max(1, Integer.getInteger("jruby.openssl.ssl.write_records", 8));
+    // max number of TLS records read (and unwrapped) at once
+    private static final int READ_RECORDS = Math.max(1, Integer.getInteger("jruby.openssl.ssl.read_records", 8));
+    // (application) data per record while dynamic record sizing keeps records small,
+    // such a record fits a single TCP segment and is decrypted as soon as it arrives
+    private static final int SMALL_RECORD_SIZE = Math.max(512, Integer.getInteger("jruby.openssl.ssl.small_record_size", 1400));
+
+    private long recordBytes; // written using small records (since fresh or idle)
+    private long lastWrite;
+
+    // @return the size limit of (the next) records, 0 for no limit (full records)
+    private int recordSizeLimit() {
+        final int threshold = sslContext.getRecordThreshold();
+        if ( threshold <= 0 ) return 0;
+        final long now = System.currentTimeMillis();
+        if ( now - lastWrite > sslContext.getRecordIdleTimeout() ) recordBytes = 0;
+        lastWrite = now;
+        return recordBytes < threshold ? SMALL_RECORD_SIZE : 0;
+    }
+
+    // wraps a single record of at most limit bytes (from the sources)
+    private SSLEngineResult wrap(final ByteBuffer[] srcs, final int limit) throws SSLException {
+        if ( limit == 0 ) return engine.wrap(srcs, netData);
+        final int[] limits = new int[srcs.length];
+        int left = limit;
+        for ( int i = 0; i < srcs.length; i++ ) {
+            final ByteBuffer src = srcs[i];
+            limits[i] = src.limit();
+            final int length = Math.min(left, src.remaining());
+            src.limit(src.position() + length);
+            left -= length;
+        }
+        try {
+            return engine.wrap(srcs, netData);
+        }
+        finally {
+            for ( int i = 0; i < srcs.length; i++ ) srcs[i].limit(limits[i]);
+        }
     }
 
     public int write(ByteBuffer src, boolean blocking) throws SSLException, IOException {
+        return write(new ByteBuffer[] { src }, blocking);
+    }
+
+    /**
+     * Wraps (encrypts) as many records as fit the staging buffer from the given
+     * buffers and writes them to the channel at once.
+     * @return bytes consumed (from the sources)
+     */
+    public int write(final ByteBuffer[] srcs, final boolean blocking) throws SSLException, IOException {
         if ( initialHandshake ) {
             throw new IOException("Writing not possible during handshake");
         }
 
-        SelectableChannel selectable = getSocketChannel();
-        boolean blockingMode = selectable.isBlocking();
-        if ( ! blocking ) selectable.configureBlocking(false);
+        if ( ! blocking ) selectingIO();
 
-        try {
-            if ( netData.hasRemaining() ) {
+        long length = 0;
+        for ( int i = 0; i < srcs.length; i++ ) length += srcs[i].remaining();
+        final int records = (int) Math.min(WRITE_RECORDS, 1 + length / appBufferSize);
+
+        synchronized (netLock) {
+            acquireWriteBuffer(records);
+            try {
+                if ( netData.hasRemaining() ) {
+                    flushData(blocking);
+                    // previously wrapped data still not written, do not loose it
+                    if ( netData.hasRemaining() ) writeWouldBlock(getRuntime());
+                }
+                netData.clear();
+                final int limit = recordSizeLimit();
+                // space a (limited) record needs - the record overhead is at most the difference
+                final int recordSize = limit == 0 ? packetBufferSize : limit + packetBufferSize - appBufferSize;
+                int consumed = 0;
+                while ( consumed < length && netData.remaining() >= recordSize ) {
+                    SSLEngineResult res = wrap(srcs, limit);
+                    if (res.getStatus()==SSLEngineResult.Status.CLOSED) {
+                        throw getRuntime().newIOError("closed SSL engine");
+                    }
+                    if ( res.bytesConsumed() == 0 ) break;
+                    consumed += res.bytesConsumed();
+                }
+                if ( limit > 0 ) recordBytes += consumed;
+                netData.flip();
                 flushData(blocking);
+                return consumed;
             }
-            netData.clear();
-            SSLEngineResult res = engine.wrap(src, netData);
-            if (res.getStatus()==SSLEngineResult.Status.CLOSED) {
-            	  throw getRuntime().newIOError("closed SSL engine");
+            finally {
+                releaseWriteBuffer();
             }
-            netData.flip();
-            flushData(blocking);
-            return res.bytesConsumed();
-        }
-        finally {
-            if ( ! blocking ) selectable.configureBlocking(blockingMode);
         }
     }
 
@@ -521,19 +1095,42 @@ public class SSLSocket extends RubyObject {
         if ( engine.isInboundDone() ) return -1;
 
         if ( ! peerAppData.hasRemaining() ) {
+            // dst can hold a whole record - decrypt directly into it
+            if ( dst.remaining() >= appBufferSize ) {
+                return readAndUnwrap(blocking, dst);
+            }
             int appBytesProduced = readAndUnwrap(blocking);
             if (appBytesProduced == -1 || appBytesProduced == 0) {
                 return appBytesProduced;
             }
         }
-        int limit = Math.min(peerAppData.remaining(), dst.remaining());
-        peerAppData.get(dst.array(), dst.arrayOffset(), limit);
-        dst.position(dst.arrayOffset() + limit);
-        return limit;
+        final int remaining = peerAppData.remaining();
+        if ( remaining <= dst.remaining() ) {
+            dst.put(peerAppData);
+            return remaining;
+        }
+        final int limit = peerAppData.limit();
+        peerAppData.limit( peerAppData.position() + dst.remaining() );
+        final int copied = peerAppData.remaining();
+        dst.put(peerAppData);
+        peerAppData.limit(limit);
+        return copied;
     }
 
     private int readAndUnwrap(boolean blocking) throws IOException {
-        int bytesRead = getSocketChannel().read(peerNetData);
+        peerAppData.clear();
+        final int produced = readAndUnwrap(blocking, peerAppData);
+        if ( produced == -1 ) peerAppData.flip();
+        return produced;
+    }
+
+    // unwraps (from the current position) into dst, peerAppData ends up flipped
+    private int readAndUnwrap(final boolean blocking, final ByteBuffer dst) throws IOException {
+        final int start = dst.position();
+        // NOTE: a blocking channel read would wait even if a whole record is buffered
+        final boolean buffered = getSocketChannel().isBlocking() && hasCompleteRecord(peerNetData);
+        int bytesRead = buffered ? 0 : channelRead(peerNetData);
+        sslContext.getStatistics().read(bytesRead);
         if (bytesRead == -1) {
             if (!peerNetData.hasRemaining() || (status == SSLEngineResult.Status.BUFFER_UNDERFLOW)) {
                 closeInbound();
@@ -543,21 +1140,31 @@ public class SSLSocket extends RubyObject {
             // be defered till the last engine.unwrap() call.
             // peerNetData could not be empty.
         }
-        peerAppData.clear();
         peerNetData.flip();
         SSLEngineResult res;
         do {
-            res = engine.unwrap(peerNetData, peerAppData);
+            res = engine.unwrap(peerNetData, dst);
         } while (res.getStatus() == SSLEngineResult.Status.OK &&
 				res.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP &&
 				res.bytesProduced() == 0);
         if(res.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
             finishInitialHandshake();
         }
-        if(peerAppData.position() == 0 &&
+        if(dst.position() == start &&
             res.getStatus() == SSLEngineResult.Status.OK &&
             peerNetData.hasRemaining()) {
-            res = engine.unwrap(peerNetData, peerAppData);
+            res = engine.unwrap(peerNetData, dst);
+        }
+        // drain all the (complete) records already read, as long as dst can hold them
+        while ( ! initialHandshake && peerNetData.hasRemaining() && dst.remaining() >= appBufferSize &&
+                res.getStatus() == SSLEngineResult.Status.OK &&
+                res.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING ) {
+            final SSLEngineResult next = engine.unwrap(peerNetData, dst);
+            // partial record (underflow) - keep the previous status, on close_notify
+            // the inbound is done and the next read returns -1 (after this data)
+            if ( next.getStatus() != SSLEngineResult.Status.OK ) break;
+            res = next;
+            if ( next.bytesConsumed() == 0 ) break;
         }
         status = res.getStatus();
         hsStatus = res.getHandshakeStatus();
@@ -570,13 +1177,14 @@ public class SSLSocket extends RubyObject {
             return -1;
         }
         peerNetData.compact();
-        peerAppData.flip();
+        final int produced = dst.position() - start;
+        if ( dst == peerAppData ) peerAppData.flip();
         if(!initialHandshake && (hsStatus == SSLEngineResult.HandshakeStatus.NEED_TASK ||
                                  hsStatus == SSLEngineResult.HandshakeStatus.NEED_WRAP ||
                                  hsStatus == SSLEngineResult.HandshakeStatus.FINISHED)) {
             doHandshake(blocking);
         }
-        return peerAppData.remaining();
+        return produced;
     }
 
     private void closeInbound() {
@@ -593,30 +1201,33 @@ public class SSLSocket extends RubyObject {
     private void doShutdown() throws IOException {
         if ( engine.isOutboundDone() ) return;
 
-        netData.clear();
-        try {
-            engine.wrap(dummy, netData);
-        }
-        catch (SSLException e) {
-            debug(getRuntime(), "SSLSocket.doShutdown", e);
-            return;
-        }
-        catch (RuntimeException e) {
-            debugStackTrace(getRuntime(), e);
-            return;
+        synchronized (netLock) {
+            acquireWriteBuffer();
+            netData.clear();
+            try {
+                engine.wrap(EMPTY, netData);
+            }
+            catch (SSLException e) {
+                debug(getRuntime(), "SSLSocket.doShutdown", e);
+                return;
+            }
+            catch (RuntimeException e) {
+                debugStackTrace(getRuntime(), e);
+                return;
+            }
+            netData.flip();
+            flushData(true);
         }
-        netData.flip();
-        flushData(true);
     }
 
     private IRubyObject do_sysread(final ThreadContext context,
-        final IRubyObject[] args, final boolean blocking) {
+        final IRubyObject[] args, final boolean blocking, final boolean exception) {
         final Ruby runtime = context.runtime;
 
         final int len = RubyNumeric.fix2int(args[0]);
         final RubyString buff;
 
-        if ( args.length == 2 && ! args[1].isNil() ) {
+        if ( args.length >= 2 && ! args[1].isNil() ) {
             buff = args[1].asString();
         } else {
             buff = runtime.newString();
@@ -629,74 +1240,128 @@ public class SSLSocket extends RubyObject {
             throw runtime.newArgumentError("negative string size (or size too big)");
         }
 
+        // larger reads get a network buffer that holds multiple records
+        if ( engine != null ) acquireReadBuffers( Math.max(1, Math.min(READ_RECORDS, len / appBufferSize)) );
         try {
-            // So we need to make sure to only block when there is no data left to process
-            if ( engine == null || ! ( peerAppData.hasRemaining() || peerNetData.position() > 0 ) ) {
-                waitSelect(SelectionKey.OP_READ, blocking);
+            // read (decrypt) straight into the string's bytes, for larger reads
+            // its grown so that a whole TLS record could be unwrapped into it
+            final int capacity;
+            if ( engine == null || len < appBufferSize / 2 ) capacity = len;
+            else capacity = Math.max(len, appBufferSize);
+
+            buff.modify(capacity);
+            final ByteList bytes = buff.getByteList();
+            final ByteBuffer dst = ByteBuffer.wrap(bytes.getUnsafeBytes(), bytes.getBegin(), capacity);
+
+            int rr = readInto(dst, len, blocking);
+            if ( rr == -1 ) {
+                if ( exception ) throw runtime.newEOFError();
+                return runtime.getNil();
             }
-
-            ByteBuffer dst = ByteBuffer.allocate(len);
-            int rr = -1;
-            // ensure >0 bytes read; sysread is blocking read.
-            while ( rr <= 0 ) {
-                if ( engine == null ) {
-                    rr = getSocketChannel().read(dst);
-                } else {
-                    rr = read(dst, blocking);
-                }
-
-                if ( rr == -1 ) throw runtime.newEOFError();
-
-                if ( rr == 0 && status == SSLEngineResult.Status.BUFFER_UNDERFLOW ) {
-                    // If we didn't get any data back because we only read in a partial TLS record,
-                    // instead of spinning until the rest comes in, call waitSelect to either block
-                    // until the rest is available, or throw a "read would block" error if we are in
-                    // non-blocking mode.
-                    waitSelect(SelectionKey.OP_READ, blocking);
-                }
+            if ( rr > len ) { // unwrapped more than asked for, keep the rest
+                peerAppData.clear();
+                peerAppData.put(bytes.getUnsafeBytes(), bytes.getBegin() + len, rr - len);
+                peerAppData.flip();
+                rr = len;
             }
-            byte[] bss = new byte[rr];
-            dst.position(dst.position() - rr);
-            dst.get(bss);
-            buff.setValue(new ByteList(bss, false));
+            bytes.setRealSize(rr);
+            buff.clearCodeRange();
             return buff;
         }
         catch (IOException ioe) {
             throw runtime.newIOError(ioe.getMessage());
         }
+        finally {
+            if ( engine != null ) releaseReadBuffers();
+        }
+    }
+
+    /**
+     * Reads (at least a byte) into the destination buffer, already decrypted data is
+     * copied up to len bytes, otherwise a record gets unwrapped (up to dst's limit).
+     * @return bytes read, -1 on EOF
+     */
+    private int readInto(final ByteBuffer dst, final int len, final boolean blocking) throws IOException {
+        // So we need to make sure to only block when there is no data left to process
+        // NOTE: once the channel is non-blocking it's read from first and only if there
+        // was nothing to read we wait (select) for more - avoiding syscalls on hot paths
+        if ( ( engine == null || ! hasBufferedInput() ) && isBlockingChannel() ) {
+            waitSelect(SelectionKey.OP_READ, blocking);
+        }
+
+        final int start = dst.position(), capacity = dst.limit() - start;
+        int rr = -1;
+        // ensure >0 bytes read; sysread is blocking read.
+        while ( rr <= 0 ) {
+            if ( engine == null ) {
+                rr = channelRead(dst);
+            } else {
+                dst.limit( start + ( peerAppData.hasRemaining() ? len : capacity ) );
+                rr = read(dst, blocking);
+            }
+
+            if ( rr == -1 ) return -1;
+
+            if ( rr == 0 && ( engine == null || status == SSLEngineResult.Status.BUFFER_UNDERFLOW ) ) {
+                // If we didn't get any data back because we only read in a partial TLS record,
+                // instead of spinning until the rest comes in, call waitSelect to either block
+                // until the rest is available, or throw a "read would block" error if we are in
+                // non-blocking mode.
+                waitSelect(SelectionKey.OP_READ, blocking);
+            }
+        }
+        return rr;
     }
 
     @JRubyMethod(rest = true, required = 1, optional = 1)
     public IRubyObject sysread(ThreadContext context, IRubyObject[] args) {
-        return do_sysread(context, args, true);
+        return do_sysread(context, args, true, true);
     }
 
     @JRubyMethod(rest = true, required = 1, optional = 2)
     public IRubyObject sysread_nonblock(ThreadContext context, IRubyObject[] args) {
-        // TODO: options for exception raising
-        return do_sysread(context, args, false);
+        IRubyObject opts = null;
+        if ( args.length > 1 && args[ args.length - 1 ] instanceof RubyHash ) {
+            opts = args[ args.length - 1 ];
+            final IRubyObject[] newArgs = new IRubyObject[ args.length - 1 ];
+            System.arraycopy(args, 0, newArgs, 0, newArgs.length);
+            args = newArgs;
+        }
+        try {
+            return do_sysread(context, args, false, isException(context, opts));
+        }
+        catch (WouldBlock e) {
+            return wouldBlock(context, e, opts);
+        }
     }
 
     private IRubyObject do_syswrite(final ThreadContext context,
         final IRubyObject arg, final boolean blocking)  {
+        final ByteList bls = arg.asString().getByteList();
+        final ByteBuffer b1 = ByteBuffer.wrap(bls.getUnsafeBytes(), bls.getBegin(), bls.getRealSize());
+        return context.runtime.newFixnum( syswrite(context, b1, blocking) );
+    }
+
+    private int syswrite(final ThreadContext context, final ByteBuffer src, final boolean blocking) {
         final Ruby runtime = context.runtime;
         try {
             checkClosed();
 
-            waitSelect(SelectionKey.OP_WRITE, blocking);
+            // blocking writes wait (in writeToChannel) only if the channel is full
+            if ( ! blocking || isBlockingChannel() ) {
+                waitSelect(SelectionKey.OP_WRITE, blocking);
+            }
 
-            ByteList bls = arg.asString().getByteList();
-            ByteBuffer b1 = ByteBuffer.wrap(bls.getUnsafeBytes(), bls.getBegin(), bls.getRealSize());
             final int written;
             if ( engine == null ) {
-                written = writeToChannel(b1, blocking);
+                written = writeToChannel(src, blocking);
             } else {
-                written = write(b1, blocking);
+                written = write(src, blocking);
             }
 
             this.callMethod(context, "io").callMethod(context, "flush");
 
-            return runtime.newFixnum(written);
+            return written;
         }
         catch (IOException ioe) {
             throw runtime.newIOError(ioe.getMessage());
@@ -710,13 +1375,393 @@ public class SSLSocket extends RubyObject {
 
     @JRubyMethod
     public IRubyObject syswrite_nonblock(ThreadContext context, IRubyObject arg) {
-        return do_syswrite(context, arg, false);
+        return syswrite_nonblock(context, arg, null);
     }
 
     @JRubyMethod
-    public IRubyObject syswrite_nonblock(ThreadContext context, IRubyObject arg, IRubyObject options) {
-        // TODO: options for exception raising
-        return do_syswrite(context, arg, false);
+    public IRubyObject syswrite_nonblock(ThreadContext context, IRubyObject arg, IRubyObject opts) {
+        try {
+            return do_syswrite(context, arg, false);
+        }
+        catch (WouldBlock e) {
+            return wouldBlock(context, e, opts);
+        }
+    }
+
+    /**
+     * Writes all of the given strings (a gathering write), in blocking mode.
+     * @return number of bytes written
+     */
+    @JRubyMethod
+    public IRubyObject syswritev(final ThreadContext context, final IRubyObject arg) {
+        final Ruby runtime = context.runtime;
+        final RubyArray strings = arg.convertToArray();
+        final ByteBuffer[] srcs = new ByteBuffer[ strings.size() ];
+        long length = 0;
+        for ( int i = 0; i < srcs.length; i++ ) {
+            final ByteList bytes = strings.entry(i).asString().getByteList();
+            srcs[i] = ByteBuffer.wrap(bytes.getUnsafeBytes(), bytes.getBegin(), bytes.getRealSize());
+            length += bytes.getRealSize();
+        }
+        try {
+            checkClosed();
+
+            if ( isBlockingChannel() ) waitSelect(SelectionKey.OP_WRITE, true);
+
+            long written = 0;
+            while ( written < length ) {
+                if ( engine == null ) {
+                    written += getSocketChannel().write(srcs);
+                    if ( written < length ) waitSelect(SelectionKey.OP_WRITE, true);
+                } else {
+                    written += write(srcs, true);
+                }
+            }
+
+            this.callMethod(context, "io").callMethod(context, "flush");
+
+            return runtime.newFixnum(written);
+        }
+        catch (IOException ioe) {
+            throw runtime.newIOError(ioe.getMessage());
+        }
+    }
+
+    // OpenSSL::Buffering (Ruby) delegates to the buffered_* methods, the read buffer
+    // is kept in "drain" mode (buffered data from position to limit)
+    private static final int BLOCK_SIZE = 1024 * 16; // Buffering::BLOCK_SIZE
+
+    private ByteBuffer rbuffer;
+    private boolean eof;
+    // pooled (and released once flushed), kept in "fill" mode with wlength bytes
+    private ByteBuffer wbuffer;
+    private int wlength;
+    private static final int WBUFFER_SIZE = BLOCK_SIZE * 2;
+    private boolean sync; // Buffering#sync
+
+    private int buffered() {
+        return rbuffer == null ? 0 : rbuffer.remaining();
+    }
+
+    // reads (decrypts) more data straight into the read buffer, @return false at EOF
+    private boolean fillReadBuffer(final ThreadContext context) {
+        if ( eof ) return false;
+
+        // room for a whole record to be unwrapped directly (w/o copying)
+        final int free = readBufferSize();
+        if ( rbuffer == null ) {
+            rbuffer = ByteBufferPool.HEAP.acquire(free);
+        }
+        else if ( rbuffer.capacity() - rbuffer.remaining() < free ) {
+            // grows geometrically, reading (a lot) till EOF/separator copies linearly
+            final int capacity = Math.max(rbuffer.capacity() * 2, rbuffer.remaining() + free);
+            final ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            buffer.put(rbuffer);
+            rbuffer = buffer;
+        }
+        else {
+            rbuffer.compact();
+        }
+
+        if ( engine != null ) acquireReadBuffers();
+        try {
+            if ( readInto(rbuffer, rbuffer.remaining(), true) == -1 ) eof = true;
+            return ! eof;
+        }
+        catch (IOException ioe) {
+            throw context.runtime.newIOError(ioe.getMessage());
+        }
+        finally {
+            rbuffer.flip();
+            if ( ! rbuffer.hasRemaining() ) releaseReadBuffer();
+            if ( engine != null ) releaseReadBuffers();
+        }
+    }
+
+    private int readBufferSize() {
+        return Math.max(BLOCK_SIZE, appBufferSize);
+    }
+
+    // an (idle) connection does not hold on to an empty read buffer, a grown one
+    // is left for the GC while the (default) sized ones get pooled
+    private void releaseReadBuffer() {
+        if ( rbuffer.capacity() == readBufferSize() ) ByteBufferPool.HEAP.release(rbuffer);
+        rbuffer = null;
+    }
+
+    // @return (and removes) up to length (all if negative) buffered bytes, null if none
+    private RubyString consumeReadBuffer(final Ruby runtime, int length) {
+        final int buffered = buffered();
+        if ( buffered == 0 ) return null;
+        if ( length < 0 || length > buffered ) length = buffered;
+        final byte[] bytes = new byte[length];
+        rbuffer.get(bytes);
+        if ( ! rbuffer.hasRemaining() ) releaseReadBuffer();
+        return RubyString.newString(runtime, new ByteList(bytes, false));
+    }
+
+    private static IRubyObject replaceBuffer(final ThreadContext context,
+        final IRubyObject[] args, final int index, final IRubyObject str) {
+        if ( args.length > index && ! args[index].isNil() ) {
+            return args[index].callMethod(context, "replace", str);
+        }
+        return str;
+    }
+
+    private static int checkLength(final Ruby runtime, final IRubyObject length) {
+        final int len = RubyNumeric.fix2int(length);
+        if ( len < 0 ) throw runtime.newArgumentError("negative length " + len + " given");
+        return len;
+    }
+
+    /**
+     * Buffering#read(size = nil, buf = nil)
+     */
+    @JRubyMethod(name = "buffered_read", optional = 2, visibility = Visibility.PRIVATE)
+    public IRubyObject buffered_read(final ThreadContext context, final IRubyObject[] args) {
+        final Ruby runtime = context.runtime;
+        final int size = args.length > 0 && ! args[0].isNil() ? checkLength(runtime, args[0]) : -1;
+        while ( size < 0 || buffered() < size ) {
+            if ( ! fillReadBuffer(context) ) break;
+        }
+        RubyString str = consumeReadBuffer(runtime, size);
+        if ( str == null ) str = RubyString.newEmptyString(runtime);
+        final IRubyObject ret = replaceBuffer(context, args, 1, str);
+        return ( size >= 0 && str.isEmpty() ) ? runtime.getNil() : ret;
+    }
+
+    /**
+     * Buffering#readpartial(maxlen, buf = nil)
+     */
+    @JRubyMethod(name = "buffered_readpartial", required = 1, optional = 1, visibility = Visibility.PRIVATE)
+    public IRubyObject buffered_readpartial(final ThreadContext context, final IRubyObject[] args) {
+        final int maxlen = checkLength(context.runtime, args[0]);
+        if ( buffered() == 0 ) return sysread(context, args);
+        return replaceBuffer(context, args, 1, consumeReadBuffer(context.runtime, maxlen));
+    }
+
+    /**
+     * Buffering#read_nonblock(maxlen, buf = nil, exception = true)
+     */
+    @JRubyMethod(name = "buffered_read_nonblock", required = 1, optional = 2, visibility = Visibility.PRIVATE)
+    public IRubyObject buffered_read_nonblock(final ThreadContext context, final IRubyObject[] args) {
+        final Ruby runtime = context.runtime;
+        final int maxlen = checkLength(runtime, args[0]);
+        if ( buffered() == 0 ) {
+            final IRubyObject buf = args.length > 1 ? args[1] : runtime.getNil();
+            if ( args.length > 2 && ! args[2].isTrue() ) {
+                final RubyHash opts = RubyHash.newHash(runtime);
+                opts.op_aset(context, runtime.newSymbol("exception"), runtime.getFalse());
+                return sysread_nonblock(context, new IRubyObject[] { args[0], buf, opts });
+            }
+            return sysread_nonblock(context, new IRubyObject[] { args[0], buf });
+        }
+        return replaceBuffer(context, args, 1, consumeReadBuffer(runtime, maxlen));
+    }
+
+    /**
+     * Buffering#gets(eol = $/, limit = nil)
+     * @note eol might be a String, Regexp or nil (to read till EOF)
+     */
+    @JRubyMethod(name = "buffered_gets", visibility = Visibility.PRIVATE)
+    public IRubyObject buffered_gets(final ThreadContext context, final IRubyObject eol, final IRubyObject limit) {
+        final Ruby runtime = context.runtime;
+        final int max = limit.isNil() ? -1 : RubyNumeric.fix2int(limit);
+
+        int size = -1;
+        if ( eol.isNil() ) {
+            while ( ( max < 0 || buffered() < max ) && fillReadBuffer(context) ) { /* till EOF */ }
+        }
+        else if ( eol instanceof RubyRegexp ) {
+            final Regex pattern = ((RubyRegexp) eol).getPattern();
+            int from = 0; // match starts are only searched in newly filled data
+            while ( true ) {
+                final int buffered = buffered();
+                if ( buffered > 0 ) {
+                    final byte[] bytes = rbuffer.array();
+                    final int begin = rbuffer.arrayOffset() + rbuffer.position();
+                    final Matcher matcher = pattern.matcher(bytes, begin, begin + buffered);
+                    if ( matcher.search(begin + from, begin + buffered, Option.NONE) >= 0 ) {
+                        final Region region = matcher.getRegion();
+                        size = region == null ? matcher.getEnd() : region.end[0];
+                        break;
+                    }
+                }
+                // (along with the last block) as a separator might span fills
+                from = Math.max(0, buffered - BLOCK_SIZE);
+                if ( ( max >= 0 && buffered >= max ) || ! fillReadBuffer(context) ) break;
+            }
+        }
+        else {
+            final ByteList separator = eol.convertToString().getByteList();
+            int from = 0; // only newly filled data is scanned
+            while ( true ) {
+                final int idx = indexOf(separator, from);
+                if ( idx >= 0 ) {
+                    size = idx + separator.getRealSize(); break;
+                }
+                from = Math.max(0, buffered() - separator.getRealSize() + 1);
+                if ( ( max >= 0 && buffered() >= max ) || ! fillReadBuffer(context) ) break;
+            }
+        }
+        if ( max >= 0 && ( size < 0 || size > max ) ) size = max;
+
+        final RubyString line = consumeReadBuffer(runtime, size);
+        return line == null ? runtime.getNil() : line;
+    }
+
+    // @return index (relative to the buffered data) of the separator, -1 if not found
+    private int indexOf(final ByteList separator, final int from) {
+        final int length = separator.getRealSize();
+        if ( rbuffer == null || length == 0 ) return length == 0 ? 0 : -1;
+
+        final byte[] bytes = rbuffer.array();
+        final int begin = rbuffer.arrayOffset() + rbuffer.position();
+        final int end = begin + rbuffer.remaining() - length;
+        final byte[] sep = separator.getUnsafeBytes();
+        final int sepBegin = separator.getBegin();
+        final byte first = sep[sepBegin];
+        NEXT: for ( int i = begin + from; i <= end; i++ ) {
+            if ( bytes[i] != first ) continue;
+            for ( int j = 1; j < length; j++ ) {
+                if ( bytes[i + j] != sep[sepBegin + j] ) continue NEXT;
+            }
+            return i - begin;
+        }
+        return -1;
+    }
+
+    /**
+     * Buffering#ungetc - pushes back (prepends) the bytes to the read buffer.
+     */
+    @JRubyMethod(name = "buffered_unread", visibility = Visibility.PRIVATE)
+    public IRubyObject buffered_unread(final ThreadContext context, final IRubyObject str) {
+        final ByteList bytes = str.convertToString().getByteList();
+        final int length = bytes.getRealSize();
+        if ( rbuffer != null && rbuffer.position() >= length ) {
+            rbuffer.position( rbuffer.position() - length );
+            System.arraycopy(bytes.getUnsafeBytes(), bytes.getBegin(), rbuffer.array(), rbuffer.arrayOffset() + rbuffer.position(), length);
+        }
+        else {
+            final ByteBuffer buffer = ByteBuffer.allocate( Math.max(BLOCK_SIZE, length + buffered()) );
+            buffer.put(bytes.getUnsafeBytes(), bytes.getBegin(), length);
+            if ( rbuffer != null ) buffer.put(rbuffer);
+            buffer.flip();
+            rbuffer = buffer;
+        }
+        return context.runtime.getNil();
+    }
+
+    /**
+     * Buffering#eof? - reads ahead (unless fill is false) if nothing is buffered.
+     */
+    @JRubyMethod(name = "buffered_eof?", optional = 1, visibility = Visibility.PRIVATE)
+    public IRubyObject buffered_eof_p(final ThreadContext context, final IRubyObject[] args) {
+        final boolean fill = args.length == 0 || args[0].isTrue();
+        if ( fill && buffered() == 0 ) fillReadBuffer(context);
+        return context.runtime.newBoolean( eof && buffered() == 0 );
+    }
+
+    @JRubyMethod
+    public IRubyObject sync(final ThreadContext context) {
+        return context.runtime.newBoolean(sync);
+    }
+
+    @JRubyMethod(name = "sync=")
+    public IRubyObject set_sync(final ThreadContext context, final IRubyObject sync) {
+        this.sync = sync.isTrue();
+        return sync;
+    }
+
+    /**
+     * Buffering#do_write - writes out the buffer (up to the last $/ separator)
+     * when in sync mode, on a line end or once BLOCK_SIZE is exceeded.
+     */
+    @JRubyMethod(name = "buffered_write", visibility = Visibility.PRIVATE)
+    public IRubyObject buffered_write(final ThreadContext context, final IRubyObject str) {
+        final ByteList bytes = str.asString().getByteList();
+        final int length = bytes.getRealSize();
+        final int start = wlength;
+        if ( start + length > WBUFFER_SIZE ) { // would get written out (all) anyway
+            if ( start > 0 ) flushWriteBuffer(context, start);
+            final ByteBuffer src = ByteBuffer.wrap(bytes.getUnsafeBytes(), bytes.getBegin(), length);
+            while ( src.hasRemaining() ) writeOut(context, src);
+            return context.runtime.getNil();
+        }
+        if ( wbuffer == null ) wbuffer = ByteBufferPool.INSTANCE.acquire(WBUFFER_SIZE);
+        wbuffer.put(bytes.getUnsafeBytes(), bytes.getBegin(), length);
+        wlength = start + length;
+
+        int flush = 0;
+        if ( sync || wlength > BLOCK_SIZE ) {
+            flush = wlength;
+        }
+        else {
+            final IRubyObject separator = context.runtime.getGlobalVariables().get("$/");
+            if ( separator instanceof RubyString ) {
+                final ByteList sep = ((RubyString) separator).getByteList();
+                final int idx = lastIndexOf(wbuffer, Math.max(0, start - sep.getRealSize() + 1), wlength, sep);
+                if ( idx >= 0 ) flush = idx + sep.getRealSize();
+            }
+        }
+        if ( flush > 0 ) flushWriteBuffer(context, flush);
+        return context.runtime.getNil();
+    }
+
+    private static int lastIndexOf(final ByteBuffer buffer, final int from, final int end, final ByteList separator) {
+        final int length = separator.getRealSize();
+        if ( length == 0 ) return -1;
+        final byte[] sep = separator.getUnsafeBytes();
+        final int sepBegin = separator.getBegin();
+        NEXT: for ( int i = end - length; i >= from; i-- ) {
+            for ( int j = 0; j < length; j++ ) {
+                if ( buffer.get(i + j) != sep[sepBegin + j] ) continue NEXT;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Buffering#flush - writes out all buffered data.
+     */
+    @JRubyMethod(name = "buffered_flush", visibility = Visibility.PRIVATE)
+    public IRubyObject buffered_flush(final ThreadContext context) {
+        if ( wlength > 0 ) flushWriteBuffer(context, wlength);
+        return context.runtime.getNil();
+    }
+
+    // writes (blocking) the first length bytes of the write buffer, released once empty
+    private void flushWriteBuffer(final ThreadContext context, final int length) {
+        int written = 0;
+        try {
+            while ( written < length ) {
+                final ByteBuffer src = wbuffer.duplicate();
+                src.limit(length); src.position(written);
+                written += writeOut(context, src);
+            }
+        }
+        finally {
+            wbuffer.limit(wlength); wbuffer.position(written);
+            wbuffer.compact();
+            wlength -= written;
+            if ( wlength == 0 ) {
+                ByteBufferPool.INSTANCE.release(wbuffer); wbuffer = null;
+            }
+        }
+    }
+
+    // writes (blocking) from the buffer, through syswrite if it's been overridden (in Ruby)
+    private int writeOut(final ThreadContext context, final ByteBuffer src) {
+        if ( getMetaClass().searchMethod("syswrite").isNative() ) {
+            return syswrite(context, src, true);
+        }
+        final byte[] bytes = new byte[ src.remaining() ];
+        src.duplicate().get(bytes);
+        final IRubyObject written = callMethod(context, "syswrite", RubyString.newString(context.runtime, new ByteList(bytes, false)));
+        final int length = RubyNumeric.fix2int(written);
+        src.position( src.position() + length );
+        return length;
     }
 
     private void checkClosed() {
@@ -736,7 +1781,7 @@ public class SSLSocket extends RubyObject {
 
         engine.closeOutbound();
 
-        if ( ! force && netData.hasRemaining() ) return;
+        if ( ! force && hasPendingWrite() ) return;
 
         try {
             doShutdown();
@@ -745,12 +1790,22 @@ public class SSLSocket extends RubyObject {
             // ignore?
             debug(getRuntime(), "SSLSocket.close doShutdown failed", e);
         }
+        finally {
+            releaseBuffers();
+        }
+    }
+
+    private boolean hasPendingWrite() {
+        synchronized (netLock) {
+            return netData != null && netData.hasRemaining();
+        }
     }
 
     @JRubyMethod
     public IRubyObject sysclose(final ThreadContext context) {
         // no need to try shutdown when it's a server
         close( sslContext.isProtocolForClient() );
+        releaseBuffers(); // even if there's unflushed (close_notify) data
 
         if ( this.callMethod(context, "sync_close").isTrue() ) {
             this.callMethod(context, "io").callMethod(context, "close");
@@ -833,21 +1888,80 @@ public class SSLSocket extends RubyObject {
     }
 
     @JRubyMethod
-    public IRubyObject pending() {
-        warn(getRuntime().getCurrentContext(), "WARNING: unimplemented method called: SSLSocket#pending");
-        return getRuntime().getNil();
+    public IRubyObject pending(final ThreadContext context) {
+        // decrypted bytes (that could be read without touching the socket)
+        if ( peerAppData == null ) return context.runtime.newFixnum(0);
+        return context.runtime.newFixnum( peerAppData.remaining() );
+    }
+
+    /**
+     * Whether data is buffered at the SSL level (decrypted or a full record)
+     * - a read would not block even if the underlying IO is not readable.
+     * NOTE: does not account for Buffering's (Ruby) read buffer.
+     */
+    @JRubyMethod(name = "data_pending?")
+    public IRubyObject data_pending_p(final ThreadContext context) {
+        return context.runtime.newBoolean( engine != null && hasBufferedInput() );
+    }
+
+    boolean hasBufferedInput() {
+        if ( peerAppData != null && peerAppData.hasRemaining() ) return true;
+        return peerNetData != null && hasCompleteRecord(peerNetData);
+    }
+
+    private static final int RECORD_HEADER_SIZE = 5;
+
+    // NOTE: expects the buffer to be in "fill" mode (as peerNetData is between reads)
+    private static boolean hasCompleteRecord(final ByteBuffer netData) {
+        final int buffered = netData.position();
+        if ( buffered < RECORD_HEADER_SIZE ) return false;
+        final int length = ( ( netData.get(3) & 0xFF ) << 8 ) | ( netData.get(4) & 0xFF );
+        return buffered >= RECORD_HEADER_SIZE + length;
+    }
+
+    /**
+     * @return the protocol negotiated using ALPN, nil if none
+     */
+    @JRubyMethod
+    public IRubyObject alpn_protocol(final ThreadContext context) {
+        if ( engine == null ) return context.runtime.getNil();
+        final String protocol = SSLContext.getApplicationProtocol(engine);
+        return protocol == null ? context.runtime.getNil() : context.runtime.newString(protocol);
     }
 
     @JRubyMethod(name = "session_reused?")
     public IRubyObject session_reused_p() {
-        warn(getRuntime().getCurrentContext(), "WARNING: SSLSocket#session_reused? is not supported");
-        return getRuntime().getNil(); // throw new UnsupportedOperationException();
+        final Ruby runtime = getRuntime();
+        if ( engine == null || initialHandshake ) return runtime.getFalse();
+        return runtime.newBoolean( sessionReused );
     }
 
     @JRubyMethod(name = "session=")
     public IRubyObject set_session(IRubyObject session) {
-        warn(getRuntime().getCurrentContext(), "WARNING: SSLSocket#session= is not supported");
-        return getRuntime().getNil(); // throw new UnsupportedOperationException();
+        if ( ! ( session instanceof SSLSession ) ) {
+            throw getRuntime().newTypeError("OpenSSL::SSL::Session expected but got " + session.getMetaClass().getName());
+        }
+        this.session = (SSLSession) session;
+        return session;
+    }
+
+    // NOTE: null while handshake did not complete
+    javax.net.ssl.SSLSession sslSession() {
+        if ( engine == null ) return null;
+        final javax.net.ssl.SSLSession session = engine.getSession();
+        return session.isValid() ? session : null;
+    }
+
+    // NOTE: null if the (wrapped) IO is not selectable
+    SelectableChannel selectableChannel() {
+        if ( io == null ) return null;
+        final Object channel = io.getChannel();
+        return channel instanceof SelectableChannel ? (SelectableChannel) channel : null;
+    }
+
+    private boolean isBlockingChannel() {
+        final Object channel = io.getChannel();
+        return ! ( channel instanceof SelectableChannel ) || ((SelectableChannel) channel).isBlocking();
     }
 
     private SocketChannel getSocketChannel() {
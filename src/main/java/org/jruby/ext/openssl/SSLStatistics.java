@@ -0,0 +1,277 @@
+/***** BEGIN LICENSE BLOCK *****
+ * Version: EPL 1.0/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Eclipse Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either of the GNU General Public License Version 2 or later (the "GPL"),
+ * or the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the EPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the EPL, the GPL or the LGPL.
+ ***** END LICENSE BLOCK *****/
+package org.jruby.ext.openssl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Handshake and traffic counters (and latency histograms) of a SSLContext.
+ *
+ * Fed by the context's SSL sockets, exposed as SSLContext#session_cache_stats
+ * and as a JMX MBean when <code>jruby.openssl.ssl.jmx=true</code> is set.
+ */
+final class SSLStatistics implements SSLStatisticsMBean {
+
+    static final boolean JMX = Boolean.getBoolean("jruby.openssl.ssl.jmx");
+
+    final AtomicLong connects = new AtomicLong();
+    final AtomicLong connectsGood = new AtomicLong();
+    final AtomicLong accepts = new AtomicLong();
+    final AtomicLong acceptsGood = new AtomicLong();
+    final AtomicLong resumed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong bytesRead = new AtomicLong();
+    final AtomicLong bytesWritten = new AtomicLong();
+
+    final Histogram handshakeTime = new Histogram();
+    final Histogram taskTime = new Histogram();
+    final Histogram verifyTime = new Histogram();
+
+    private Registration registration;
+
+    void handshakeStarted(final boolean client) {
+        ( client ? connects : accepts ).incrementAndGet();
+    }
+
+    void handshakeFinished(final boolean client, final boolean reused, final long nanos) {
+        ( client ? connectsGood : acceptsGood ).incrementAndGet();
+        if ( reused ) resumed.incrementAndGet();
+        handshakeTime.record(nanos);
+    }
+
+    void handshakeFailed() {
+        failed.incrementAndGet();
+    }
+
+    void read(final int bytes) {
+        if ( bytes > 0 ) bytesRead.addAndGet(bytes);
+    }
+
+    void written(final int bytes) {
+        if ( bytes > 0 ) bytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * Registers (a weak reference to) the statistics as a MBean, the MBean server does not
+     * keep the context alive - MBeans of collected statistics get unregistered on the next
+     * {@link #register(String)} (or {@link #unregister()}).
+     */
+    synchronized void register(final String name) throws JMException {
+        if ( registration != null ) return;
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        unregisterCollected(server);
+        final ObjectName objectName = new ObjectName("org.jruby.ext.openssl:type=SSLContext,name=" + ObjectName.quote(name));
+        final Registration registration = new Registration(this, objectName);
+        final SSLStatisticsMBean mbean = (SSLStatisticsMBean) Proxy.newProxyInstance(
+            SSLStatisticsMBean.class.getClassLoader(), new Class<?>[] { SSLStatisticsMBean.class }, registration
+        );
+        server.registerMBean(new StandardMBean(mbean, SSLStatisticsMBean.class), objectName);
+        this.registration = registration;
+    }
+
+    synchronized void unregister() throws JMException {
+        if ( registration == null ) return;
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            registration.clear();
+            unregister(server, registration.objectName);
+            unregisterCollected(server);
+        }
+        finally {
+            registration = null;
+        }
+    }
+
+    boolean isRegistered() {
+        return registration != null;
+    }
+
+    private static final ReferenceQueue<SSLStatistics> collected = new ReferenceQueue<SSLStatistics>();
+
+    private static void unregisterCollected(final MBeanServer server) throws JMException {
+        Reference<? extends SSLStatistics> ref;
+        while ( ( ref = collected.poll() ) != null ) {
+            unregister(server, ((Registration) ref).objectName);
+        }
+    }
+
+    private static void unregister(final MBeanServer server, final ObjectName objectName) throws JMException {
+        try {
+            server.unregisterMBean(objectName);
+        }
+        catch (InstanceNotFoundException e) { /* already unregistered */ }
+    }
+
+    // the (registered) MBean, forwarding to the statistics while they're reachable
+    private static final class Registration extends WeakReference<SSLStatistics> implements InvocationHandler {
+
+        final ObjectName objectName;
+
+        Registration(final SSLStatistics statistics, final ObjectName objectName) {
+            super(statistics, collected);
+            this.objectName = objectName;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final Object target;
+            if ( method.getDeclaringClass() == Object.class ) target = this;
+            else {
+                target = get();
+                if ( target == null ) { // collected (not yet unregistered)
+                    final Class<?> type = method.getReturnType();
+                    if ( type == Long.TYPE ) return 0L;
+                    if ( type == Double.TYPE ) return 0.0;
+                    return null; // void reset()
+                }
+            }
+            try {
+                return method.invoke(target, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+    }
+
+    public long getConnects() { return connects.get(); }
+    public long getConnectsGood() { return connectsGood.get(); }
+    public long getAccepts() { return accepts.get(); }
+    public long getAcceptsGood() { return acceptsGood.get(); }
+
+    public long getHandshakes() { return connectsGood.get() + acceptsGood.get(); }
+    public long getResumedHandshakes() { return resumed.get(); }
+    public long getFailedHandshakes() { return failed.get(); }
+
+    public long getBytesRead() { return bytesRead.get(); }
+    public long getBytesWritten() { return bytesWritten.get(); }
+
+    public double getHandshakeTimeMean() { return handshakeTime.mean(); }
+    public double getHandshakeTime99thPercentile() { return handshakeTime.percentile(0.99); }
+    public double getHandshakeTimeMax() { return handshakeTime.max(); }
+
+    public long getDelegatedTasks() { return taskTime.count(); }
+    public double getDelegatedTaskTimeMean() { return taskTime.mean(); }
+    public double getDelegatedTaskTime99thPercentile() { return taskTime.percentile(0.99); }
+    public double getDelegatedTaskTimeMax() { return taskTime.max(); }
+
+    public long getVerifications() { return verifyTime.count(); }
+    public double getVerifyTimeMean() { return verifyTime.mean(); }
+    public double getVerifyTime99thPercentile() { return verifyTime.percentile(0.99); }
+    public double getVerifyTimeMax() { return verifyTime.max(); }
+
+    public void reset() {
+        connects.set(0); connectsGood.set(0);
+        accepts.set(0); acceptsGood.set(0);
+        resumed.set(0); failed.set(0);
+        bytesRead.set(0); bytesWritten.set(0);
+        handshakeTime.reset(); taskTime.reset(); verifyTime.reset();
+    }
+
+    /**
+     * A (lock-free) latency histogram with power of 2 (micro-second) buckets,
+     * bucket <code>i</code> counts times in the [2^i, 2^(i+1)) us range.
+     */
+    static final class Histogram {
+
+        private static final int BUCKETS = 32; // up to ~ 35 minutes
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong(); // nanos
+        private final AtomicLong max = new AtomicLong(); // nanos
+
+        void record(final long nanos) {
+            if ( nanos < 0 ) return;
+            final long micros = nanos / 1000;
+            final int bucket = micros == 0 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+            buckets.incrementAndGet( Math.min(bucket, BUCKETS - 1) );
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long current;
+            while ( nanos > ( current = max.get() ) ) {
+                if ( max.compareAndSet(current, nanos) ) break;
+            }
+        }
+
+        long count() { return count.get(); }
+
+        /**
+         * @return mean time in milliseconds
+         */
+        double mean() {
+            final long count = this.count.get();
+            return count == 0 ? 0 : total.get() / (count * 1000000.0);
+        }
+
+        /**
+         * @return max time in milliseconds
+         */
+        double max() {
+            return max.get() / 1000000.0;
+        }
+
+        /**
+         * @param p (0.0 - 1.0)
+         * @return (upper bound of the) percentile time in milliseconds
+         */
+        double percentile(final double p) {
+            final long count = this.count.get();
+            if ( count == 0 ) return 0;
+            final long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for ( int i = 0; i < BUCKETS; i++ ) {
+                seen += buckets.get(i);
+                if ( seen >= rank ) {
+                    return Math.min( ( 1L << ( i + 1 ) ) / 1000.0, max() );
+                }
+            }
+            return max();
+        }
+
+        void reset() {
+            for ( int i = 0; i < BUCKETS; i++ ) buckets.set(i, 0);
+            count.set(0); total.set(0); max.set(0);
+        }
+
+    }
+
+}
@@ -31,6 +31,8 @@ import java.io.FileNotFoundException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.net.ssl.X509TrustManager;
 
 /**
@@ -125,6 +127,12 @@ public class Store implements X509TrustManager {
     public final List<Object> extraData;
     public final int references;
 
+    // changes whenever trusted objects (or verification parameters) change
+    private final AtomicInteger generation = new AtomicInteger(0);
+
+    private static final AtomicLong ids = new AtomicLong(0);
+    private final long id = ids.incrementAndGet();
+
     /**
      * c: X509_STORE_new
      */
@@ -146,6 +154,21 @@ public class Store implements X509TrustManager {
         return objects;
     }
 
+    /**
+     * @return a counter changed on every modification of the store (e.g. a
+     * certificate being added) - allows for caching verification results
+     */
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return an (JVM wide) unique identifier of this store
+     */
+    public long getId() {
+        return id;
+    }
+
     public List<Lookup> getCertificateMethods() {
         return certificateMethods;
     }
@@ -208,6 +231,7 @@ public class Store implements X509TrustManager {
      * c: X509_STORE_set_depth
      */
     public int setDepth(int depth) {
+        generation.incrementAndGet();
         verifyParameter.setDepth(depth);
         return 1;
     }
@@ -216,6 +240,7 @@ public class Store implements X509TrustManager {
      * c: X509_STORE_set_flags
      */
     public int setFlags(long flags) {
+        generation.incrementAndGet();
         return verifyParameter.setFlags(flags);
     }
 
@@ -223,6 +248,7 @@ public class Store implements X509TrustManager {
      * c: X509_STORE_set_purpose
      */
     public int setPurpose(int purpose) {
+        generation.incrementAndGet();
         return verifyParameter.setPurpose(purpose);
     }
 
@@ -230,6 +256,7 @@ public class Store implements X509TrustManager {
      * c: X509_STORE_set_trust
      */
     public int setTrust(int trust) {
+        generation.incrementAndGet();
         return verifyParameter.setTrust(trust);
     }
 
@@ -250,6 +277,7 @@ public class Store implements X509TrustManager {
         Lookup lookup = new Lookup(method);
         lookup.store = this;
         certificateMethods.add(lookup);
+        generation.incrementAndGet();
         return lookup;
     }
 
@@ -270,6 +298,7 @@ public class Store implements X509TrustManager {
             }
             else {
                 objects.add(certObj);
+                generation.incrementAndGet();
             }
         }
         return ret;
@@ -291,6 +320,7 @@ public class Store implements X509TrustManager {
             }
             else {
                 objects.add(crlObj);
+                generation.incrementAndGet();
             }
         }
         return ret;
@@ -0,0 +1,95 @@
+/***** BEGIN LICENSE BLOCK *****
+ * Version: EPL 1.0/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Eclipse Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either of the GNU General Public License Version 2 or later (the "GPL"),
+ * or the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the EPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the EPL, the GPL or the LGPL.
+ ***** END LICENSE BLOCK *****/
+
+package org.jruby.ext.openssl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CipherStringsTest {
+
+    static final String[] SUPPORTED = new String[] {
+        "SSL_RSA_WITH_RC4_128_MD5",
+        "TLS_RSA_WITH_AES_128_CBC_SHA",
+        "TLS_DHE_RSA_WITH_AES_128_CBC_SHA",
+        "SSL_RSA_WITH_3DES_EDE_CBC_SHA",
+        "SSL_RSA_WITH_DES_CBC_SHA",
+        "TLS_DH_anon_WITH_AES_128_CBC_SHA",
+        "TLS_RSA_WITH_AES_256_CBC_SHA",
+        "UNKNOWN_SUITE"
+    };
+
+    static List<String> names(List<CipherStrings.Def> defs) {
+        final List<String> names = new ArrayList<String>(defs.size());
+        for ( CipherStrings.Def def : defs ) names.add(def.name);
+        return names;
+    }
+
+    @Test
+    public void matchesInSupportedOrder() {
+        List<CipherStrings.Def> defs = CipherStrings.getMatchingCiphers("AES", SUPPORTED);
+        assertEquals("[AES128-SHA, DHE-RSA-AES128-SHA, ADH-AES128-SHA, AES256-SHA]", names(defs).toString());
+        assertEquals("TLS_RSA_WITH_AES_128_CBC_SHA", defs.get(0).cipherSuite);
+    }
+
+    @Test
+    public void excludesAndMoves() {
+        List<CipherStrings.Def> defs = CipherStrings.getMatchingCiphers("AES:!ADH:+DHE-RSA-AES128-SHA:RC4", SUPPORTED);
+        assertEquals("[AES128-SHA, AES256-SHA, DHE-RSA-AES128-SHA, RC4-MD5]", names(defs).toString());
+
+        defs = CipherStrings.getMatchingCiphers("ALL:-AES:aRSA+AES", SUPPORTED);
+        assertFalse( names(defs).contains("ADH-AES128-SHA") );
+        assertEquals("AES256-SHA", defs.get(defs.size() - 1).name);
+    }
+
+    @Test
+    public void sortsByStrength() {
+        List<CipherStrings.Def> defs = CipherStrings.getMatchingCiphers("DES:RC4:3DES:@STRENGTH", SUPPORTED);
+        assertEquals("[DES-CBC3-SHA, RC4-MD5, DES-CBC-SHA]", names(defs).toString());
+    }
+
+    @Test
+    public void alwaysIncludesTLSv13Suites() {
+        final String[] supported = new String[] {
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256", "TLS_AES_128_GCM_SHA256", "TLS_RSA_WITH_AES_128_CBC_SHA"
+        };
+        List<CipherStrings.Def> defs = CipherStrings.getMatchingCiphers("ECDHE+AESGCM:!TLS_AES_128_GCM_SHA256", supported);
+        assertEquals("[TLS_AES_128_GCM_SHA256, ECDHE-RSA-AES128-GCM-SHA256]", names(defs).toString());
+        assertEquals("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256", defs.get(1).cipherSuite);
+    }
+
+    @Test
+    public void memoizesMatches() {
+        List<CipherStrings.Def> defs = CipherStrings.getMatchingCiphers("ALL:!ADH", SUPPORTED);
+        assertSame(defs, CipherStrings.getMatchingCiphers("ALL:!ADH", SUPPORTED.clone()));
+        // shared definitions are not touched
+        assertNull( CipherStrings.CipherNames.get("AES128-SHA").cipherSuite );
+    }
+
+}
@@ -0,0 +1,95 @@
+/***** BEGIN LICENSE BLOCK *****
+ * Version: EPL 1.0/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Eclipse Public
+ * License Version 1.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either of the GNU General Public License Version 2 or later (the "GPL"),
+ * or the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the EPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the EPL, the GPL or the LGPL.
+ ***** END LICENSE BLOCK *****/
+package org.jruby.ext.openssl;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class SSLStatisticsTest {
+
+    @Test
+    public void countsHandshakes() {
+        final SSLStatistics stats = new SSLStatistics();
+        stats.handshakeStarted(true); stats.handshakeFinished(true, false, 1000000);
+        stats.handshakeStarted(true); stats.handshakeFinished(true, true, 2000000);
+        stats.handshakeStarted(false); stats.handshakeFailed();
+        assertEquals(2, stats.getConnects());
+        assertEquals(2, stats.getConnectsGood());
+        assertEquals(1, stats.getAccepts());
+        assertEquals(0, stats.getAcceptsGood());
+        assertEquals(1, stats.getResumedHandshakes());
+        assertEquals(1, stats.getFailedHandshakes());
+        assertEquals(1.5, stats.getHandshakeTimeMean(), 0.001);
+        assertEquals(2.0, stats.getHandshakeTimeMax(), 0.001);
+
+        stats.reset();
+        assertEquals(0, stats.getHandshakes());
+        assertEquals(0, stats.getFailedHandshakes());
+    }
+
+    @Test
+    public void countsTraffic() {
+        final SSLStatistics stats = new SSLStatistics();
+        stats.read(100); stats.read(-1); stats.written(42);
+        assertEquals(100, stats.getBytesRead());
+        assertEquals(42, stats.getBytesWritten());
+    }
+
+    @Test
+    public void histogramPercentile() {
+        final SSLStatistics.Histogram histogram = new SSLStatistics.Histogram();
+        for ( int i = 0; i < 99; i++ ) histogram.record(10000); // 10us
+        histogram.record(50000000); // 50ms
+        assertEquals(100, histogram.count());
+        assertTrue( histogram.percentile(0.99) <= 0.016 );
+        assertEquals(50.0, histogram.percentile(1.0), 0.001);
+        assertEquals(50.0, histogram.max(), 0.001);
+    }
+
+    @Test
+    public void registersMBean() throws Exception {
+        final SSLStatistics stats = new SSLStatistics();
+        stats.handshakeStarted(false);
+        stats.register("SSLStatisticsTest");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.jruby.ext.openssl:type=SSLContext,name=\"SSLStatisticsTest\"");
+        try {
+            assertTrue( server.isRegistered(name) );
+            assertEquals(1L, server.getAttribute(name, "Accepts"));
+        }
+        finally {
+            stats.unregister();
+        }
+        assertFalse( server.isRegistered(name) );
+        assertFalse( stats.isRegistered() );
+    }
+
+}
@@ -0,0 +1,87 @@
+# coding: US-ASCII
+require File.expand_path('../ssl_helper', File.dirname(__FILE__))
+
+class TestSSLBuffering < Test::Unit::TestCase
+  include SSLTestHelper
+
+  # OpenSSL::Buffering w/o the native buffered_* methods (the Ruby implementation)
+  class RubyBuffered
+    include OpenSSL::Buffering
+
+    def initialize(data, chunk = 1000)
+      @io = Struct.new(:sync).new(true)
+      @data = data.dup; @chunk = chunk
+      super()
+    end
+
+    def sysread(size, buf = nil)
+      raise EOFError if @data.empty?
+      size = @chunk if size > @chunk
+      str = @data[0, size]; @data[0, size] = ''
+      buf ? buf.replace(str) : str
+    end
+  end
+
+  PAYLOAD = "line one\nline two\r\nthird line\n" + ( 'x' * 40000 ) + "\r\nEND\n\n" + ( 'y' * 20000 ) + "--\ntail"
+
+  OPS = [
+    [ :gets ], [ :gets, "\r\n" ], [ :gets, /\r?\n/ ], [ :read, 7 ], [ :readpartial, 3 ],
+    [ :gets, /\r?\n/ ], [ :gets, "\n\n" ], [ :gets, /-+\n/ ], [ :getc ], [ :read ], [ :gets ], [ :read, 1 ]
+  ]
+
+  def test_gets_and_read_parity_with_ruby_buffering
+    expected = apply(OPS, RubyBuffered.new(PAYLOAD))
+    actual = nil
+    start_server(server_context, lambda { |ssl| ssl.write PAYLOAD }) do |port|
+      connect(port) { |ssl| actual = apply(OPS, ssl) }
+    end
+    assert_equal expected, actual
+  end
+
+  def test_ruby_buffering_is_a_fallback
+    buffered = RubyBuffered.new("one\ntwo")
+    assert_equal "one\n", buffered.gets
+    assert_equal "two", buffered.read
+    assert buffered.eof?
+  end
+
+  def test_sync
+    start_server do |port|
+      connect(port) do |ssl|
+        assert_equal true, ssl.sync
+        ssl.sync = false
+        assert_equal false, ssl.sync
+        ssl.print "hello" # buffered
+        ssl.puts ""
+        assert_equal "hello\n", ssl.gets
+      end
+    end
+  end
+
+  def test_overridden_syswrite_is_used
+    start_server do |port|
+      connect(port) do |ssl|
+        def ssl.syswrite(str)
+          ( @written ||= [] ) << str.dup
+          super
+        end
+        ssl.puts "hello"
+        assert_equal "hello\n", ssl.gets
+        assert_equal [ "hello\n" ], ssl.instance_variable_get(:@written)
+      end
+    end
+  end
+
+  private
+
+  def apply(ops, io)
+    ops.map do |op|
+      begin
+        io.send(*op)
+      rescue EOFError => e
+        e.class
+      end
+    end
+  end
+
+end
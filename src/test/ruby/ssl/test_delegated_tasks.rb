@@ -0,0 +1,84 @@
+# coding: US-ASCII
+require File.expand_path('../ssl_helper', File.dirname(__FILE__))
+
+class TestSSLDelegatedTasks < Test::Unit::TestCase
+  include SSLTestHelper
+
+  def test_connect_nonblock_completes_with_task_threads
+    ctx = client_context
+    ctx.delegated_task_threads = 3 # a context (executor) of its own
+    threads = task_threads
+    start_server do |port|
+      ssl = client_socket(port, ctx)
+      begin
+        handshake_nonblock(ssl)
+        ssl.write "hello\n"
+        assert_equal "hello\n", ssl.gets
+      ensure
+        ssl.close
+      end
+    end
+    assert ! ( task_threads - threads ).empty?, 'tasks did not run on a task thread'
+  end
+
+  def test_reactor_connect_completes_with_task_threads
+    ctx = client_context
+    ctx.delegated_task_threads = 4
+    threads = task_threads
+    reactor = OpenSSL::SSL::Reactor.new
+    start_server do |port|
+      ssl = client_socket(port, ctx)
+      begin
+        reactor.register(ssl, :connect)
+        events = []
+        10.times { break unless ( events = reactor.poll(0.5) ).empty? }
+        assert_equal [[ssl, :connect]], events
+        ssl.write "hello\n"
+        assert_equal "hello\n", ssl.gets
+      ensure
+        ssl.close
+      end
+    end
+    assert ! ( task_threads - threads ).empty?, 'tasks did not run on a task thread'
+  ensure
+    reactor.close if reactor
+  end
+
+  def test_verify_callback_runs_on_calling_thread
+    threads = []
+    ctx = client_context
+    ctx.delegated_task_threads = 2
+    ctx.verify_mode = OpenSSL::SSL::VERIFY_PEER
+    ctx.verify_callback = lambda { |ok, store| threads << Thread.current; true }
+    start_server do |port|
+      connect(port, ctx) do |ssl|
+        ssl.write "hello\n"
+        assert_equal "hello\n", ssl.gets
+      end
+    end
+    assert ! threads.empty?
+    assert_equal [ Thread.current ], threads.uniq
+  end
+
+  private
+
+  def task_threads
+    names = java.lang.Thread.getAllStackTraces.keySet.map { |thread| thread.getName }
+    names.select { |name| name.index('jruby-openssl-ssl-task-') == 0 }
+  end
+
+  # the IO.select idiom - the handshake must not stall while tasks run
+  def handshake_nonblock(ssl)
+    loop do
+      case ssl.connect_nonblock(:exception => false)
+      when :wait_readable
+        assert IO.select([ ssl ], nil, nil, 5), 'handshake stalled (waiting to read)'
+      when :wait_writable
+        assert IO.select(nil, [ ssl ], nil, 5), 'handshake stalled (waiting to write)'
+      else
+        return ssl
+      end
+    end
+  end
+
+end
@@ -0,0 +1,90 @@
+# coding: US-ASCII
+require File.expand_path('../ssl_helper', File.dirname(__FILE__))
+
+class TestSSLReactor < Test::Unit::TestCase
+  include SSLTestHelper
+
+  def setup
+    @reactor = OpenSSL::SSL::Reactor.new
+  end
+
+  def teardown
+    @reactor.close
+  end
+
+  def test_connect_and_read
+    start_server do |port|
+      ssl = client_socket(port)
+      begin
+        @reactor.register(ssl, :connect)
+        assert_equal [[ssl, :connect]], poll_until_ready
+        ssl.write "hello\n"
+        @reactor.register(ssl, :read)
+        assert_equal [[ssl, :read]], poll_until_ready
+        assert_equal "hello\n", ssl.gets
+        assert_equal 0, @reactor.size
+      ensure
+        ssl.close
+      end
+    end
+  end
+
+  def test_poll_with_a_closed_socket
+    start_server do |port|
+      ssl = client_socket(port)
+      ssl.close
+      @reactor.register(ssl, :read)
+      assert_equal [[ssl, :read]], @reactor.poll(5)
+      assert_equal 0, @reactor.size
+    end
+  end
+
+  def test_poll_with_a_socket_closed_while_registered
+    start_server(server_context, lambda { |ssl| sleep 0.5 }) do |port|
+      ssl = connect(port)
+      @reactor.register(ssl, :read)
+      ssl.close
+      assert_equal [[ssl, :read]], poll_until_ready
+      assert_equal 0, @reactor.size
+    end
+  end
+
+  def test_handshake_failure_on_a_closed_socket
+    start_server do |port|
+      ssl = client_socket(port)
+      ssl.to_io.close
+      @reactor.register(ssl, :connect)
+      events = @reactor.poll(5)
+      assert_equal 1, events.size
+      assert_equal ssl, events[0][0]
+      assert_kind_of Exception, events[0][1]
+      assert_equal 0, @reactor.size
+    end
+  end
+
+  def test_duplicate_registration_replaces
+    start_server(server_context, lambda { |ssl| sleep 0.5 }) do |port|
+      ssl = connect(port)
+      begin
+        @reactor.register(ssl, :read)
+        @reactor.register(ssl, :read)
+        sleep 0.1 # registered (by the reactor thread)
+        assert_equal 1, @reactor.size
+      ensure
+        ssl.close
+      end
+    end
+  end
+
+  private
+
+  def poll_until_ready(timeout = 5)
+    deadline = Time.now + timeout
+    events = []
+    while events.empty? && Time.now < deadline
+      events = @reactor.poll(0.5)
+    end
+    events
+  end
+
+end
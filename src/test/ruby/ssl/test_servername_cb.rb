@@ -0,0 +1,57 @@
+# coding: US-ASCII
+require File.expand_path('../ssl_helper', File.dirname(__FILE__))
+
+class TestSSLServernameCallback < Test::Unit::TestCase
+  include SSLTestHelper
+
+  def test_servername_cb_called_per_connection
+    calls = []; contexts = []
+    ctx = server_context
+    ctx.servername_cb = lambda do |socket, hostname|
+      calls << hostname
+      contexts << server_context("#{hostname}-#{calls.size}") # e.g. a rotated certificate
+      contexts.last
+    end
+    server_contexts = []
+    handler = lambda do |ssl|
+      server_contexts << ssl.context
+      while line = ssl.gets
+        ssl.write(line)
+      end
+    end
+    subjects = []
+    start_server(ctx, handler) do |port|
+      2.times do
+        ssl = client_socket(port)
+        ssl.hostname = 'sni.example.com'
+        ssl.connect
+        begin
+          subjects << ssl.peer_cert.subject.to_s
+          ssl.write "hello\n"
+          assert_equal "hello\n", ssl.gets
+        ensure
+          ssl.close
+        end
+      end
+    end
+    assert_equal [ 'sni.example.com', 'sni.example.com' ], calls
+    assert_equal [ '/CN=sni.example.com-1', '/CN=sni.example.com-2' ], subjects
+    assert_equal contexts, server_contexts
+  end
+
+  def test_servername_cb_returning_nil_uses_default_context
+    ctx = server_context('default')
+    ctx.servername_cb = lambda { |socket, hostname| nil }
+    start_server(ctx) do |port|
+      ssl = client_socket(port)
+      ssl.hostname = 'sni.example.com'
+      ssl.connect
+      begin
+        assert_equal '/CN=default', ssl.peer_cert.subject.to_s
+      ensure
+        ssl.close
+      end
+    end
+  end
+
+end
@@ -0,0 +1,175 @@
+# coding: US-ASCII
+require File.expand_path('../ssl_helper', File.dirname(__FILE__))
+
+class TestSSLSession < Test::Unit::TestCase
+  include SSLTestHelper
+
+  def test_session_reused_with_session_set
+    ctx = client_context
+    server_ctx = server_context
+    server_reused = []
+    handler = lambda do |ssl|
+      server_reused << ssl.session_reused?
+      while line = ssl.gets
+        ssl.write(line)
+      end
+    end
+    start_server(server_ctx, handler) do |port|
+      session = connect(port, ctx) do |ssl|
+        ssl.write "hello\n"; ssl.gets # (TLS 1.3) session ticket gets processed
+        assert ! ssl.session_reused?
+        ssl.session
+      end
+      assert_instance_of OpenSSL::SSL::Session, session
+
+      ssl = client_socket(port, ctx)
+      ssl.session = session
+      ssl.connect
+      begin
+        ssl.write "hello\n"; ssl.gets
+        assert ssl.session_reused?
+      ensure
+        ssl.close
+      end
+    end
+    assert_equal 1, ctx.session_cache_stats[:cache_hits]
+    # (TLS 1.3) resumed from a stateless ticket - a session object new to the server
+    assert_equal [ false, true ], server_reused
+    assert_equal 1, server_ctx.session_cache_stats[:cache_hits]
+  end
+
+  def test_session_reused_with_same_hostname
+    ctx = client_context
+    start_server do |port|
+      session = connect_to(port, ctx, 'localhost') do |ssl|
+        ssl.write "hello\n"; ssl.gets
+        ssl.session
+      end
+      connect_to(port, ctx, 'localhost', session) do |ssl|
+        assert ssl.session_reused?
+      end
+    end
+  end
+
+  def test_session_not_reused_for_another_hostname
+    ctx = client_context
+    start_server do |port|
+      session = connect_to(port, ctx, 'localhost') do |ssl|
+        ssl.write "hello\n"; ssl.gets
+        ssl.session
+      end
+      connect_to(port, ctx, 'other.localhost', session) do |ssl|
+        assert ! ssl.session_reused?
+      end
+    end
+  end
+
+  def test_session_reused_false_before_connect
+    start_server do |port|
+      ssl = client_socket(port)
+      begin
+        assert ! ssl.session_reused?
+      ensure
+        ssl.close rescue nil
+      end
+    end
+  end
+
+  def test_session_set_requires_session
+    start_server do |port|
+      ssl = client_socket(port)
+      begin
+        assert_raise(TypeError) { ssl.session = 'session' }
+      ensure
+        ssl.close rescue nil
+      end
+    end
+  end
+
+  def test_client_session_not_reused_with_cache_off
+    ctx = client_context
+    ctx.session_cache_mode = OpenSSL::SSL::SSLContext::SESSION_CACHE_OFF
+    start_server do |port|
+      2.times do
+        connect(port, ctx) do |ssl|
+          ssl.write "hello\n"; ssl.gets
+          assert ! ssl.session_reused?
+        end
+      end
+    end
+  end
+
+  def test_session_reused_with_session_set_and_client_cache_off
+    ctx = client_context
+    ctx.session_cache_mode = OpenSSL::SSL::SSLContext::SESSION_CACHE_SERVER
+    start_server do |port|
+      session = connect(port, ctx) do |ssl|
+        ssl.write "hello\n"; ssl.gets
+        ssl.session
+      end
+      connect(port, ctx) do |ssl| # not looked up (automatically)
+        ssl.write "hello\n"; ssl.gets
+        assert ! ssl.session_reused?
+      end
+      ssl = client_socket(port, ctx)
+      ssl.session = session
+      ssl.connect
+      begin
+        ssl.write "hello\n"; ssl.gets
+        assert ssl.session_reused?
+      ensure
+        ssl.close
+      end
+    end
+  end
+
+  def test_server_session_not_reused_with_cache_off
+    server_ctx = server_context
+    server_ctx.session_cache_mode = OpenSSL::SSL::SSLContext::SESSION_CACHE_CLIENT
+    ctx = client_context
+    start_server(server_ctx) do |port|
+      session = connect(port, ctx) do |ssl|
+        ssl.write "hello\n"; ssl.gets
+        ssl.session
+      end
+      ssl = client_socket(port, ctx)
+      ssl.session = session
+      ssl.connect
+      begin
+        ssl.write "hello\n"; ssl.gets
+        assert ! ssl.session_reused?
+      ensure
+        ssl.close
+      end
+    end
+  end
+
+  def test_session_get_cb_not_supported
+    ctx = server_context
+    ctx.session_get_cb = lambda { |args| nil }
+    assert_raise(NotImplementedError) { ctx.setup }
+  end
+
+  def test_no_internal_lookup_not_supported_for_server
+    ctx = server_context
+    mode = OpenSSL::SSL::SSLContext::SESSION_CACHE_SERVER | OpenSSL::SSL::SSLContext::SESSION_CACHE_NO_INTERNAL_LOOKUP
+    assert_raise(NotImplementedError) { ctx.session_cache_mode = mode }
+    # e.g. Net::HTTP (external client session storage)
+    ctx.session_cache_mode = OpenSSL::SSL::SSLContext::SESSION_CACHE_CLIENT | OpenSSL::SSL::SSLContext::SESSION_CACHE_NO_INTERNAL_STORE
+  end
+
+  private
+
+  def connect_to(port, ctx, hostname, session = nil)
+    ssl = client_socket(port, ctx)
+    ssl.hostname = hostname
+    ssl.session = session if session
+    ssl.connect
+    begin
+      yield ssl
+    ensure
+      ssl.close
+    end
+  end
+
+end
@@ -0,0 +1,95 @@
+# coding: US-ASCII
+require File.expand_path('../ssl_helper', File.dirname(__FILE__))
+
+class TestSSLSharedContext < Test::Unit::TestCase
+  include SSLTestHelper
+
+  def test_session_cache_stats_are_per_context
+    ctx1 = client_context; ctx1.setup
+    ctx2 = client_context; ctx2.setup
+    start_server do |port|
+      connect(port, ctx1) do |ssl|
+        ssl.write "hello\n"; ssl.gets # (TLS 1.3) session ticket gets processed
+      end
+    end
+    assert_equal 1, ctx1.session_cache_stats[:connect]
+    assert_equal 0, ctx2.session_cache_stats[:connect]
+    assert_equal 0, ctx2.session_cache_stats[:cache_num]
+  end
+
+  def test_flush_sessions_does_not_affect_other_contexts
+    ctx1 = client_context; ctx1.setup
+    ctx2 = client_context; ctx2.setup
+    start_server do |port|
+      connect(port, ctx1) do |ssl|
+        ssl.write "hello\n"; ssl.gets
+      end
+    end
+    cache_num = ctx1.session_cache_stats[:cache_num]
+    ctx2.flush_sessions(Time.now + 24 * 60 * 60)
+    assert_equal cache_num, ctx1.session_cache_stats[:cache_num]
+  end
+
+  def test_session_cache_size_does_not_affect_other_contexts
+    ctx1 = client_context; ctx1.setup
+    ctx2 = client_context; ctx2.setup
+    ctx2.session_cache_size = 1
+    assert_equal 1, ctx2.session_cache_size
+    assert_not_equal 1, ctx1.session_cache_size
+    start_server do |port| # both still work
+      connect(port, ctx1) { |ssl| ssl.write "1\n"; assert_equal "1\n", ssl.gets }
+      connect(port, ctx2) { |ssl| ssl.write "2\n"; assert_equal "2\n", ssl.gets }
+    end
+  end
+
+  def test_session_callbacks_are_not_shared
+    new_sessions = []
+    ctx1 = client_context
+    ctx1.session_new_cb = lambda { |args| new_sessions << args }
+    ctx1.setup
+    ctx2 = client_context; ctx2.setup
+    start_server do |port|
+      connect(port, ctx2) { |ssl| ssl.write "2\n"; ssl.gets }
+      assert new_sessions.empty?
+      connect(port, ctx1) { |ssl| ssl.write "1\n"; ssl.gets }
+    end
+    # not resumed from the session ctx2 established - a new session for ctx1
+    assert_equal 1, new_sessions.size
+    assert_equal 0, ctx1.session_cache_stats[:cache_hits]
+  end
+
+  def test_session_id_context_is_not_shared
+    server_ctx = server_context
+    server_ctx.session_id_context = 'one'
+    same_ctx = server_context
+    same_ctx.cert = server_ctx.cert; same_ctx.session_id_context = 'one'
+    other_ctx = server_context
+    other_ctx.cert = server_ctx.cert; other_ctx.session_id_context = 'two'
+    ctx = client_context
+    start_server(server_ctx) do |port|
+      session = connect(port, ctx) do |ssl|
+        ssl.write "hello\n"; ssl.gets
+        ssl.session
+      end
+      assert resumed?(same_ctx, ctx, session)
+      assert ! resumed?(other_ctx, ctx, session)
+    end
+  end
+
+  private
+
+  def resumed?(server_ctx, ctx, session)
+    start_server(server_ctx) do |port|
+      ssl = client_socket(port, ctx)
+      ssl.session = session
+      ssl.connect
+      begin
+        ssl.write "hello\n"; ssl.gets
+        ssl.session_reused?
+      ensure
+        ssl.close
+      end
+    end
+  end
+
+end
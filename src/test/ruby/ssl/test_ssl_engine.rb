@@ -0,0 +1,85 @@
+# coding: US-ASCII
+require File.expand_path('../ssl_helper', File.dirname(__FILE__))
+
+class TestSSLEngine < Test::Unit::TestCase
+  include SSLTestHelper
+
+  def test_feed_extract_round_trip
+    client, server = handshake_engines
+    assert client.handshake_completed?
+    assert server.handshake_completed?
+    assert ! client.session_reused?
+
+    assert_equal 6, client.write("hello\n")
+    server.feed client.extract
+    assert_equal "hello\n", server.read
+
+    assert_equal 5, server.write("world")
+    client.feed server.extract
+    assert_equal "world", client.read
+    assert_equal '', client.read # nothing fed
+
+    client.close
+    server.feed client.extract
+    assert_nil server.read
+    assert server.eof?
+  end
+
+  def test_session_reused
+    ctx = client_context; server_ctx = server_context
+    client, server = handshake_engines(ctx, server_ctx)
+    client.write "hello\n"; server.feed client.extract; server.read
+    server.write "hello\n"; client.feed server.extract; client.read # (TLS 1.3) session ticket
+
+    client, server = handshake_engines(ctx, server_ctx)
+    assert client.session_reused?
+    assert server.session_reused?
+  end
+
+  def test_session_new_cb_gets_no_socket
+    ctx = client_context
+    called = nil
+    ctx.session_new_cb = lambda { |args| called = args }
+    handshake_engines(ctx)
+    assert called
+    assert_nil called[0]
+    assert_instance_of OpenSSL::SSL::Session, called[1]
+  end
+
+  def test_write_is_short_while_output_pending
+    client, server = handshake_engines
+    data = 'x' * (1024 * 1024)
+    written = client.write(data)
+    assert written > 0
+    assert written < data.size
+    assert_equal 0, client.write(data[written..-1])
+
+    read = ''
+    while written < data.size || client.pending_output > 0
+      out = client.extract
+      while out.size > 0
+        out = out[ server.feed(out)..-1 ]
+        read << server.read
+      end
+      written += client.write(data[written..-1]) if written < data.size
+    end
+    read << server.read
+    assert_equal data.size, read.size
+  end
+
+  private
+
+  def handshake_engines(ctx = client_context, server_ctx = server_context)
+    client = OpenSSL::SSL::SSLEngine.new(ctx, :client, 'localhost', 443)
+    server = OpenSSL::SSL::SSLEngine.new(server_ctx, :server)
+    100.times do
+      client_done = client.handshake
+      server.feed client.extract
+      server_done = server.handshake
+      client.feed server.extract
+      break if client_done && server_done && client.pending_output == 0 && server.pending_output == 0
+    end
+    [ client, server ]
+  end
+
+end
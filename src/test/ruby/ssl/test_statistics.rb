@@ -0,0 +1,53 @@
+# coding: US-ASCII
+require File.expand_path('../ssl_helper', File.dirname(__FILE__))
+
+class TestSSLStatistics < Test::Unit::TestCase
+  include SSLTestHelper
+
+  def test_handshake_and_traffic_counters
+    server_ctx = server_context; ctx = client_context
+    start_server(server_ctx) do |port|
+      connect(port, ctx) do |ssl|
+        ssl.write "hello\n"
+        assert_equal "hello\n", ssl.gets
+      end
+    end
+    stats = ctx.session_cache_stats
+    assert_equal 1, stats[:connect]
+    assert_equal 1, stats[:connect_good]
+    assert_equal 0, stats[:handshakes_failed]
+    # network bytes (handshake records included)
+    assert stats[:bytes_written] > 6
+    assert stats[:bytes_read] > 6
+    assert_equal 1, stats[:handshake_time][:count]
+
+    stats = server_ctx.session_cache_stats
+    assert_equal 1, stats[:accept]
+    assert_equal 1, stats[:accept_good]
+  end
+
+  def test_failed_handshake_counted
+    ctx = client_context
+    ctx.verify_mode = OpenSSL::SSL::VERIFY_PEER # self-signed server certificate
+    start_server do |port|
+      assert_raise(OpenSSL::SSL::SSLError) { connect(port, ctx) }
+    end
+    stats = ctx.session_cache_stats
+    assert_equal 1, stats[:connect]
+    assert_equal 0, stats[:connect_good]
+    assert_equal 1, stats[:handshakes_failed]
+  end
+
+  def test_handshake_failed_by_callback_counted
+    ctx = client_context
+    ctx.verify_mode = OpenSSL::SSL::VERIFY_PEER
+    ctx.verify_callback = lambda { |ok, store_ctx| raise 'verify_callback failed' }
+    start_server do |port|
+      assert_raise(OpenSSL::SSL::SSLError, RuntimeError) { connect(port, ctx) }
+    end
+    stats = ctx.session_cache_stats
+    assert_equal 0, stats[:connect_good]
+    assert_equal 1, stats[:handshakes_failed]
+  end
+
+end
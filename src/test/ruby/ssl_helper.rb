@@ -0,0 +1,87 @@
+require File.expand_path('test_helper', File.dirname(__FILE__))
+require 'jopenssl/load'
+require 'socket'
+
+module SSLTestHelper
+
+  def self.key
+    @key ||= OpenSSL::PKey::RSA.new(2048)
+  end
+
+  # a self-signed certificate for the given (host) name
+  def self.certificate(cn = 'localhost', key = self.key)
+    cert = OpenSSL::X509::Certificate.new
+    cert.version = 2
+    cert.serial = rand(1 << 32)
+    cert.subject = cert.issuer = OpenSSL::X509::Name.parse("/CN=#{cn}")
+    cert.public_key = key.public_key
+    cert.not_before = Time.now - 60
+    cert.not_after = Time.now + 3600
+    cert.sign(key, OpenSSL::Digest::SHA256.new)
+    cert
+  end
+
+  def server_context(cn = 'localhost')
+    ctx = OpenSSL::SSL::SSLContext.new
+    ctx.key = SSLTestHelper.key
+    ctx.cert = SSLTestHelper.certificate(cn)
+    ctx
+  end
+
+  def client_context
+    OpenSSL::SSL::SSLContext.new
+  end
+
+  # accepts SSL connections (in a thread each) while the block runs, the handler
+  # gets each accepted socket - by default data read is echoed back (line by line)
+  def start_server(ctx = server_context, handler = nil)
+    server = TCPServer.new('127.0.0.1', 0)
+    accepted = []
+    thread = Thread.new do
+      loop do
+        sock = server.accept rescue break
+        accepted << Thread.new(sock) do |s|
+          ssl = OpenSSL::SSL::SSLSocket.new(s, ctx)
+          ssl.sync_close = true
+          begin
+            ssl.accept
+            if handler
+              handler.call(ssl)
+            else
+              while line = ssl.gets
+                ssl.write(line)
+              end
+            end
+          rescue IOError, SystemCallError, OpenSSL::SSL::SSLError
+          ensure
+            ssl.close rescue nil
+          end
+        end
+      end
+    end
+    yield server.addr[1]
+  ensure
+    server.close rescue nil
+    thread.join if thread
+    accepted.each { |t| t.join(5) }
+  end
+
+  # a connected (not yet handshaking) SSL client socket
+  def client_socket(port, ctx = client_context)
+    ssl = OpenSSL::SSL::SSLSocket.new(TCPSocket.new('127.0.0.1', port), ctx)
+    ssl.sync_close = true
+    ssl
+  end
+
+  def connect(port, ctx = client_context)
+    ssl = client_socket(port, ctx)
+    ssl.connect
+    return ssl unless block_given?
+    begin
+      yield ssl
+    ensure
+      ssl.close rescue nil
+    end
+  end
+
+end